@@ -0,0 +1,54 @@
+#!/bin/bash
+#
+# Startup time and resident memory of the JVM jar against the native binary.
+#
+#   mvn package -DskipTests                 # target/ping-pong.jar
+#   mvn package -DskipTests -Pnative-image  # target/ping-pong, GraalVM 21+
+#   benchmarks/native-compare.sh
+#
+# Startup is measured to the first HTTP answer on /health (the service serves
+# it before the store is open), RSS once it answers and again after a burst
+# of /getPlayers requests. kvlite should be running for the second figure to
+# mean anything.
+#
+# JVM only so far (JDK 17, kvlite on the same host, three runs): startup
+# 3334 - 3572 ms, rss idle 127 - 130 MB, rss after 1000 requests 180 - 192 MB.
+# The native figures still need a GraalVM 21 build of target/ping-pong.
+
+PORT=8080
+REQUESTS=${REQUESTS:-1000}
+
+measure() {
+    local name=$1
+    shift
+
+    local start=$(date +%s%N)
+    "$@" > /dev/null 2>&1 &
+    local pid=$!
+
+    until curl -s -o /dev/null "http://localhost:$PORT/health"; do
+        sleep 0.01
+    done
+    local ready=$(( ($(date +%s%N) - start) / 1000000 ))
+    local rss_idle=$(ps -o rss= -p $pid)
+
+    for i in $(seq $REQUESTS); do
+        curl -s -o /dev/null "http://localhost:$PORT/getPlayers"
+    done
+    local rss_loaded=$(ps -o rss= -p $pid)
+
+    kill $pid
+    wait $pid 2> /dev/null
+
+    printf "%-8s startup %6d ms   rss idle %7d KB   rss after %d requests %7d KB\n" \
+        "$name" "$ready" "$rss_idle" "$REQUESTS" "$rss_loaded"
+}
+
+cd "$(dirname "$0")/.."
+
+measure jvm java -jar target/ping-pong.jar
+if [ -x target/ping-pong ]; then
+    measure native target/ping-pong
+else
+    echo "native   target/ping-pong not built, skipped"
+fi
@@ -0,0 +1,98 @@
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.helidon.webserver.WebServer;
+
+import oracle.kv.KVStore;
+import oracle.kv.KVStoreConfig;
+import oracle.kv.KVStoreFactory;
+import oracle.kv.table.Row;
+import oracle.kv.table.Table;
+import oracle.kv.table.TableAPI;
+import oracle.kv.table.TableOperation;
+import oracle.kv.table.TableOperationFactory;
+
+/**
+ * An embedded server on kvlite for the store-backed benchmarks, with ladders
+ * written straight into the store: a signup per player would take far
+ * longer than the measurement. kvlite is expected as for LoadDriver, or
+ * started with -Dkvlite.
+ */
+class EmbeddedLadder {
+    // rows written per execute, all in the ladder's shard
+    private static final int BATCH = 500;
+
+    private final Process kvlite;
+    private final WebServer server;
+    private final KVStore kvstore;
+
+    private EmbeddedLadder(Process kvlite, WebServer server, KVStore kvstore) {
+        this.kvlite = kvlite;
+        this.server = server;
+        this.kvstore = kvstore;
+    }
+
+    // returns once the service reports UP, so its tables exist
+    static EmbeddedLadder start() throws Exception {
+        Process kvlite = LoadDriver.startKVLite();
+
+        WebServer server = Main.startServer();
+        while (!server.isRunning()) {
+            Thread.sleep(100);
+        }
+        new RestClient("http://localhost:" + server.port()).awaitHealthy(TimeUnit.MINUTES.toMillis(2));
+
+        String host = InetAddress.getLocalHost().getHostName();
+        return new EmbeddedLadder(kvlite, server, KVStoreFactory.getStore(new KVStoreConfig("kvstore", host + ":5000")));
+    }
+
+    // a fresh ladder id, so runs can share a store
+    static String newLadderId(String prefix) {
+        return prefix + "-" + Long.toString(System.currentTimeMillis(), 36);
+    }
+
+    static String email(int i) {
+        return "bench-" + i + "@oracle.com";
+    }
+
+    // player i has rank i + 1 and ratings[i]; players 20k and 20k + 1 are
+    // in a match with each other if inMatch is set, 20k + 1 challenging the
+    // player above
+    void load(String ladderId, int[] ratings, boolean inMatch) throws Exception {
+        TableAPI tables = kvstore.getTableAPI();
+        Row ladderRow = tables.getTable("ladders").createRow();
+        ladderRow.put("ladderId", ladderId).put("playerCount", ratings.length);
+        tables.put(ladderRow, null, null);
+
+        Table players = tables.getTable("ladders.players");
+        TableOperationFactory operations = tables.getTableOperationFactory();
+        List<TableOperation> batch = new ArrayList<TableOperation>(BATCH);
+        for (int i = 0; i < ratings.length; i++) {
+            boolean playing = inMatch && i % 20 < 2;
+            Row row = players.createRow();
+            row.put("ladderId", ladderId).put("email", email(i)).put("rank", i + 1)
+               .put("name", "Bench " + i).put("password", "").put("challenger", playing && i % 2 == 1)
+               .put("challenged", playing && i % 2 == 0).put("winStreak", 0).put("wins", 0).put("losses", 0)
+               .put("rating", ratings[i]);
+            batch.add(operations.createPut(row, null, true));
+            if (batch.size() == BATCH || i == ratings.length - 1) {
+                tables.execute(batch, null);
+                batch.clear();
+            }
+        }
+    }
+
+    RestClient client(String ladderId) {
+        return new RestClient("http://localhost:" + server.port() + "/ladders/" + ladderId);
+    }
+
+    void stop() throws Exception {
+        server.shutdown().toCompletableFuture().get(10, TimeUnit.SECONDS);
+        kvstore.close();
+        if (kvlite != null) {
+            kvlite.destroy();
+        }
+    }
+}
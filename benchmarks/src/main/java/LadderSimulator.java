@@ -0,0 +1,276 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import javax.json.JsonObject;
+
+import io.helidon.webserver.WebServer;
+
+/**
+ * Simulates a population of players using one ladder, for capacity planning.
+ *
+ * Virtual players arrive as a Poisson process at -Drate per second, however
+ * fast the server answers, so overload shows up as queueing instead of being
+ * hidden by a closed loop. The first phase signs up -Dplayers players; the
+ * second runs login/challenge/conclude flows for -Dseconds. Every request is
+ * recorded in a per-endpoint latency histogram with its 4xx, 409 and 5xx
+ * counts. Each flow is also timed from its scheduled arrival, so it includes
+ * the time spent waiting for one of the -Dconcurrency workers.
+ *
+ * The run uses a fresh ladder, /ladders/sim-..., and then checks it.
+ * Ranks must run 1..n over exactly the players that signed up. Players in a
+ * match must pair up with their neighbour, in both directions. Total wins
+ * must equal total losses and concluded matches. Exits 1 on any violation.
+ *
+ * Targets an embedded server by default, or -Durl=http://host:port;
+ * -Dkvlite starts a store as for LoadDriver.
+ */
+public class LadderSimulator {
+    private static final int PLAYERS = Integer.getInteger("players", 2000);
+    private static final double RATE = Double.parseDouble(System.getProperty("rate", "100"));
+    private static final int SECONDS = Integer.getInteger("seconds", 60);
+    private static final int CONCURRENCY = Integer.getInteger("concurrency", 64);
+
+    private static final String RUN = Long.toString(System.currentTimeMillis(), 36);
+    private static final String LADDER = "sim-" + RUN;
+
+    private static final class Endpoint {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong conflicts = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+
+        void record(long micros, int status) {
+            latency.record(micros);
+            if (status == 409) {
+                conflicts.incrementAndGet();
+            } else if (status >= 500) {
+                errors.incrementAndGet();
+            } else if (status >= 400) {
+                rejected.incrementAndGet();
+            }
+        }
+
+        String report() {
+            return String.format("%8d req  p50 %8.2f  p90 %8.2f  p99 %8.2f  p99.9 %8.2f  max %8.2f ms  4xx %d  409 %d  5xx %d",
+                    latency.count(), ms(latency.percentile(0.50)), ms(latency.percentile(0.90)),
+                    ms(latency.percentile(0.99)), ms(latency.percentile(0.999)), ms(latency.max()),
+                    rejected.get(), conflicts.get(), errors.get());
+        }
+
+        private static double ms(long micros) {
+            return micros / 1000.0;
+        }
+    }
+
+    private static final Map<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+    private static RestClient client;
+
+    // player i has signed up
+    private static final AtomicIntegerArray signedUp = new AtomicIntegerArray(PLAYERS);
+    private static final AtomicInteger signups = new AtomicInteger();
+    private static final AtomicInteger concluded = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        Process kvlite = null;
+        WebServer server = null;
+        String url = System.getProperty("url");
+
+        if (url == null) {
+            kvlite = LoadDriver.startKVLite();
+            server = Main.startServer();
+            while (!server.isRunning()) {
+                Thread.sleep(100);
+            }
+            url = "http://localhost:" + server.port();
+        }
+        new RestClient(url).awaitHealthy(TimeUnit.MINUTES.toMillis(2));
+        client = new RestClient(url + "/ladders/" + LADDER);
+
+        List<String> violations;
+        try {
+            AtomicInteger nextPlayer = new AtomicInteger();
+            arrivals("signup", n -> n < PLAYERS, () -> signUp(nextPlayer.getAndIncrement()));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+            arrivals("match", n -> System.nanoTime() < deadline, LadderSimulator::playMatch);
+
+            violations = checkLadder();
+        } finally {
+            if (server != null) {
+                server.shutdown().toCompletableFuture().get(10, TimeUnit.SECONDS);
+            }
+            if (kvlite != null) {
+                kvlite.destroy();
+            }
+        }
+
+        System.out.println();
+        System.out.println("ladder " + LADDER + ": " + signups.get() + " players, " + concluded.get()
+                + " matches concluded, " + RATE + " arrivals/s, " + CONCURRENCY + " workers");
+        for (Map.Entry<String, Endpoint> endpoint : new TreeMap<String, Endpoint>(endpoints).entrySet()) {
+            System.out.println(String.format("%-24s %s", endpoint.getKey(), endpoint.getValue().report()));
+        }
+
+        System.out.println();
+        if (violations.isEmpty()) {
+            System.out.println("ladder invariants hold");
+        } else {
+            violations.forEach(v -> System.out.println("VIOLATION: " + v));
+            System.exit(1);
+        }
+    }
+
+    private interface Flow {
+        void run() throws IOException;
+    }
+
+    // schedules flows at exponentially distributed gaps while more(arrivals so far) holds
+    private static void arrivals(String name, LongPredicate more, Flow flow) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(CONCURRENCY);
+        Endpoint flows = endpoint("flow " + name);
+
+        long next = System.nanoTime();
+        for (long n = 0; more.test(n); n++) {
+            next += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) / RATE * 1e9);
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+
+            long scheduled = next;
+            workers.execute(() -> {
+                int status = 200;
+                try {
+                    flow.run();
+                } catch (IOException e) {
+                    status = 599;
+                }
+                flows.record((System.nanoTime() - scheduled) / 1000, status);
+            });
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+    }
+
+    private static void signUp(int i) throws IOException {
+        int status = post("/addPlayer", "{\"player\":\"Sim " + i + "\",\"email\":\"" + email(i) + "\",\"password\":\"secret\"}");
+        if (status < 300) {
+            signups.incrementAndGet();
+            signedUp.set(i, 1);
+        }
+    }
+
+    // one player logs in and plays the player above; either side may win
+    private static void playMatch() throws IOException {
+        int i = ThreadLocalRandom.current().nextInt(PLAYERS);
+        if (signedUp.get(i) == 0) {
+            return;
+        }
+        String email = email(i);
+
+        if (post("/login", "{\"email\":\"" + email + "\",\"password\":\"secret\"}") >= 300
+                || post("/challengePlayer", "{\"email\":\"" + email + "\"}") >= 300) {
+            // already in a match, or the top player
+            return;
+        }
+
+        String opponent = timedJson("/inMatch", email).getString("email");
+        String winner = ThreadLocalRandom.current().nextBoolean() ? email : opponent;
+        if (post("/concludeMatch", "{\"email\":\"" + winner + "\"}") < 300) {
+            concluded.incrementAndGet();
+        }
+    }
+
+    private static List<String> checkLadder() throws IOException {
+        List<String> violations = new ArrayList<String>();
+        List<JsonObject> players = client.getJson("/getPlayers").getJsonArray("players").getValuesAs(JsonObject.class);
+
+        if (players.size() != signups.get()) {
+            violations.add(players.size() + " players on the ladder, " + signups.get() + " signed up");
+        }
+
+        Set<String> emails = new HashSet<String>();
+        long wins = 0, losses = 0;
+        for (int r = 0; r < players.size(); r++) {
+            JsonObject player = players.get(r);
+            if (player.getInt("rank") != r + 1) {
+                violations.add("position " + (r + 1) + " holds rank " + player.getInt("rank"));
+            }
+            if (!emails.add(player.getString("email"))) {
+                violations.add(player.getString("email") + " is listed twice");
+            }
+            wins += player.getInt("wins");
+            losses += player.getInt("losses");
+        }
+        if (wins != losses || wins != concluded.get()) {
+            violations.add(wins + " wins, " + losses + " losses, " + concluded.get() + " matches concluded");
+        }
+
+        // matches are always between neighbours, so from the top down every
+        // player in a match must pair with the one below, who names them back
+        for (int r = 0; r < players.size(); r++) {
+            if (!players.get(r).getBoolean("inMatch")) {
+                continue;
+            }
+            String upper = players.get(r).getString("email");
+            String lower = (r + 1 < players.size()) ? players.get(r + 1).getString("email") : null;
+
+            if (lower == null || !players.get(r + 1).getBoolean("inMatch")) {
+                violations.add(upper + " is in a match with nobody below");
+            } else if (!lower.equals(client.postJson("/inMatch", "{\"email\":\"" + upper + "\"}").getString("email"))
+                    || !upper.equals(client.postJson("/inMatch", "{\"email\":\"" + lower + "\"}").getString("email"))) {
+                violations.add(upper + " and " + lower + " disagree about their match");
+            }
+            r++;
+        }
+        return violations;
+    }
+
+    private static String email(int i) {
+        return "sim-" + RUN + "-" + i + "@oracle.com";
+    }
+
+    private static Endpoint endpoint(String name) {
+        return endpoints.computeIfAbsent(name, n -> new Endpoint());
+    }
+
+    private static int post(String path, String json) throws IOException {
+        Endpoint endpoint = endpoint("POST " + path);
+        long begin = System.nanoTime();
+        int status = 599;
+        try {
+            status = client.post(path, json);
+            return status;
+        } finally {
+            endpoint.record((System.nanoTime() - begin) / 1000, status);
+        }
+    }
+
+    private static JsonObject timedJson(String path, String email) throws IOException {
+        Endpoint endpoint = endpoint("POST " + path);
+        long begin = System.nanoTime();
+        int status = 599;
+        try {
+            RestClient.JsonResponse response = client.postJsonResponse(path, "{\"email\":\"" + email + "\"}");
+            status = response.status;
+            return response.json();
+        } finally {
+            endpoint.record((System.nanoTime() - begin) / 1000, status);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram.
+ *
+ * Values (microseconds) below 128 get a bucket each; above that every
+ * power of two is split into 64 buckets, so a reported percentile is within
+ * about 1.5% of the true value whatever its magnitude. Recording is a single
+ * atomic increment, so worker threads share one histogram per endpoint.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+
+    // about 12 days in microseconds; anything slower is recorded as this
+    private static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(MAX_VALUE) + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+
+        for (long seen = max.get(); value > seen && !max.compareAndSet(seen, value); seen = max.get()) {
+            // retry until the larger value sticks
+        }
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    // value at or below which fraction p of the recordings fall, 0 if empty
+    long percentile(double p) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(p * total));
+
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= wanted) {
+                return Math.min(highestInBucket(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    private static int index(long value) {
+        if (value < (1 << SUB_BUCKET_BITS)) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return shift * HALF_BUCKETS + (int) (value >> shift);
+    }
+
+    private static long highestInBucket(int index) {
+        if (index < (1 << SUB_BUCKET_BITS)) {
+            return index;
+        }
+        int shift = index / HALF_BUCKETS - 1;
+        long sub = index - shift * HALF_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
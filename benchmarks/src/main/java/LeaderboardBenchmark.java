@@ -0,0 +1,57 @@
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import oracle.kv.table.Row;
+
+/**
+ * Cost of rebuilding the /getPlayers body after a ladder write, and of
+ * serving it once it is cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeaderboardBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int size;
+
+    List<Row> rows;
+    Leaderboard leaderboard;
+
+    @Setup
+    public void setUp() {
+        rows = SampleLadder.players(size);
+        leaderboard = new Leaderboard();
+        leaderboard.publish(Leaderboard.serialize(rows.iterator()), leaderboard.generation());
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return Leaderboard.serialize(rows.iterator());
+    }
+
+    @Benchmark
+    public Leaderboard.Snapshot snapshot() {
+        return new Leaderboard.Snapshot(Leaderboard.serialize(rows.iterator()));
+    }
+
+    @Benchmark
+    public Leaderboard.Snapshot cached() {
+        return leaderboard.current();
+    }
+}
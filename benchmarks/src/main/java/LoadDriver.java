@@ -0,0 +1,214 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import io.helidon.webserver.WebServer;
+
+/**
+ * Drives the REST API of an embedded server and reports latency per endpoint.
+ *
+ * Expects kvlite on hostname:5000 unless -Dkvlite=path/to/kvstore.jar is
+ * given, in which case a throwaway store is started first. Other settings:
+ * -Dthreads (default 8), -Dseconds per endpoint (default 10) and -Dplayers
+ * signed up before the read phases (default 200).
+ */
+public class LoadDriver {
+    private static final int THREADS = Integer.getInteger("threads", 8);
+    private static final int SECONDS = Integer.getInteger("seconds", 10);
+    private static final int PLAYERS = Integer.getInteger("players", 200);
+
+    // every run signs up fresh emails so it can be repeated against one store
+    private static final String RUN = Long.toString(System.currentTimeMillis(), 36);
+
+    private interface Call {
+        // one request; returns the HTTP status
+        int run(int i) throws IOException;
+    }
+
+    private static final class Latencies {
+        private long[] nanos = new long[1024];
+        private int count;
+        private int errors;
+
+        synchronized void record(long elapsed, int status) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = elapsed;
+            if (status >= 500) {
+                errors++;
+            }
+        }
+
+        synchronized String report(double seconds) {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            return String.format("%8d req %9.1f req/s  p50 %8.2f ms  p99 %8.2f ms  max %8.2f ms  5xx %d",
+                    count, count / seconds, percentile(sorted, 0.50), percentile(sorted, 0.99),
+                    percentile(sorted, 1.0), errors);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+
+    private static RestClient client;
+
+    public static void main(String[] args) throws Exception {
+        Process kvlite = startKVLite();
+
+        WebServer server = Main.startServer();
+        while (!server.isRunning()) {
+            Thread.sleep(100);
+        }
+        client = new RestClient("http://localhost:" + server.port());
+        client.awaitHealthy(TimeUnit.MINUTES.toMillis(2));
+
+        Map<String, String> results = new LinkedHashMap<String, String>();
+        AtomicInteger signedUp = new AtomicInteger();
+
+        try {
+            results.put("POST /addPlayer", runFixed(PLAYERS, i -> {
+                int status = post("/addPlayer", "{\"player\":\"Load " + i + "\",\"email\":\"" + email(i)
+                        + "\",\"password\":\"secret\"}");
+                if (status < 300) {
+                    signedUp.incrementAndGet();
+                }
+                return status;
+            }));
+
+            if (signedUp.get() == 0) {
+                throw new IllegalStateException("no player could sign up, is the store up?");
+            }
+
+            results.put("POST /login", runTimed(i ->
+                    post("/login", "{\"email\":\"" + email(randomPlayer()) + "\",\"password\":\"secret\"}")));
+
+            results.put("GET /getPlayers", runTimed(i -> get("/getPlayers")));
+
+            results.put("GET /getPlayers?fromRank", runTimed(i ->
+                    get("/getPlayers?fromRank=" + (ThreadLocalRandom.current().nextInt(PLAYERS) + 1) + "&limit=20")));
+
+            // a challenge and its result; 400s from players already in a match are expected
+            results.put("POST /challengePlayer+/concludeMatch", runTimed(i -> {
+                String email = email(randomPlayer());
+                int status = post("/challengePlayer", "{\"email\":\"" + email + "\"}");
+                if (status < 300) {
+                    status = post("/concludeMatch", "{\"email\":\"" + email + "\"}");
+                }
+                return status;
+            }));
+        } finally {
+            server.shutdown().toCompletableFuture().get(10, TimeUnit.SECONDS);
+            if (kvlite != null) {
+                kvlite.destroy();
+            }
+        }
+
+        System.out.println();
+        System.out.println(THREADS + " threads, " + SECONDS + " s per endpoint, " + signedUp.get() + " players");
+        for (Map.Entry<String, String> result : results.entrySet()) {
+            System.out.println(String.format("%-38s %s", result.getKey(), result.getValue()));
+        }
+    }
+
+    private static String email(int i) {
+        return "load-" + RUN + "-" + i + "@oracle.com";
+    }
+
+    private static int randomPlayer() {
+        return ThreadLocalRandom.current().nextInt(PLAYERS);
+    }
+
+    // total requests spread over the workers
+    private static String runFixed(int total, Call call) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        return run(call, () -> {
+            int i = next.getAndIncrement();
+            return (i < total) ? i : -1;
+        });
+    }
+
+    private static String runTimed(Call call) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+        AtomicInteger next = new AtomicInteger();
+        return run(call, () -> (System.nanoTime() < deadline) ? next.getAndIncrement() : -1);
+    }
+
+    // calls until next hands out -1
+    private static String run(Call call, IntSupplier next) throws InterruptedException {
+        Latencies latencies = new Latencies();
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+
+        for (int w = 0; w < THREADS; w++) {
+            workers.execute(() -> {
+                for (int i = next.getAsInt(); i != -1; i = next.getAsInt()) {
+                    long begin = System.nanoTime();
+                    int status;
+                    try {
+                        status = call.run(i);
+                    } catch (IOException e) {
+                        status = 599;
+                    }
+                    latencies.record(System.nanoTime() - begin, status);
+                }
+            });
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        return latencies.report((System.nanoTime() - start) / 1e9);
+    }
+
+    private static int get(String path) throws IOException {
+        return client.get(path);
+    }
+
+    private static int post(String path, String json) throws IOException {
+        return client.post(path, json);
+    }
+
+    // starts kvlite from -Dkvlite if set and waits for its port
+    static Process startKVLite() throws Exception {
+        String jar = System.getProperty("kvlite");
+        if (jar == null) {
+            return null;
+        }
+
+        File root = Files.createTempDirectory("kvlite").toFile();
+        Process kvlite = new ProcessBuilder("java", "-jar", jar, "kvlite", "-secure-config", "disable",
+                "-root", root.getPath()).inheritIO().start();
+
+        String host = InetAddress.getLocalHost().getHostName();
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(2);
+        while (System.currentTimeMillis() < deadline) {
+            // only probes that the registry port accepts connections
+            try {
+                new Socket(host, 5000).close();
+                return kvlite;
+            } catch (IOException e) {
+                Thread.sleep(500);
+            }
+        }
+
+        kvlite.destroy();
+        throw new IllegalStateException("kvlite did not start on " + host + ":5000");
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Password check for /login: the full PBKDF2 hash against a repeat login
+ * answered from the credential cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginBenchmark {
+
+    String stored;
+    Credentials credentials;
+
+    @Setup
+    public void setUp() {
+        stored = Credentials.hash("secret");
+        credentials = new Credentials(1024, TimeUnit.HOURS.toMillis(1));
+        credentials.verify("bob@oracle.com", "secret", stored);
+    }
+
+    @Benchmark
+    public boolean hashed() {
+        return Credentials.matches("secret", stored);
+    }
+
+    @Benchmark
+    public boolean cached() {
+        return credentials.verify("bob@oracle.com", "secret", stored);
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import oracle.kv.table.Row;
+
+/**
+ * Finding the player at a rank: the RankCache lookup the handlers use,
+ * against walking the rows in rank order as the old full-table scans did.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankLookupBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int size;
+
+    RankCache cache;
+    List<Row> rows;
+
+    @Setup
+    public void setUp() {
+        rows = SampleLadder.players(size);
+        cache = new RankCache();
+        for (Row row : rows) {
+            cache.put(row.get("rank").asInteger().get(), row.get("email").asString().get());
+        }
+    }
+
+    @Benchmark
+    public String cachedLookup() {
+        return cache.get(ThreadLocalRandom.current().nextInt(size) + 1);
+    }
+
+    @Benchmark
+    public String scanLookup() {
+        int rank = ThreadLocalRandom.current().nextInt(size) + 1;
+        for (Row row : rows) {
+            if (row.get("rank").asInteger().get() == rank) {
+                return row.get("email").asString().get();
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String swapRanks() {
+        int rank = ThreadLocalRandom.current().nextInt(size - 1) + 2;
+        cache.swap(rank, rank - 1);
+        return cache.get(rank);
+    }
+}
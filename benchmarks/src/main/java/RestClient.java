@@ -0,0 +1,124 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+/**
+ * Minimal JSON-over-HTTP calls against the ping-pong REST API, shared by the
+ * load tools. Bodies are always read to the end so keep-alive connections
+ * are reused.
+ */
+class RestClient {
+    private final String baseUrl;
+
+    // e.g. "http://localhost:8080" or "http://localhost:8080/ladders/sim"
+    RestClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    // returns the HTTP status, the body is discarded
+    int get(String path) throws IOException {
+        return drain(open(path), null);
+    }
+
+    int post(String path, String json) throws IOException {
+        return drain(send(path, json), null);
+    }
+
+    // waits until /health reports UP; until the ladder store is open every
+    // ladder route answers 503, so a run that starts earlier measures nothing
+    void awaitHealthy(long timeoutMillis) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (int status = get("/health"); status != HttpURLConnection.HTTP_OK; status = get("/health")) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("/health still returned " + status + " after " + timeoutMillis + " ms");
+            }
+            Thread.sleep(250);
+        }
+    }
+
+    // body of a successful GET, or an IOException naming the status
+    JsonObject getJson(String path) throws IOException {
+        JsonResponse response = getJsonResponse(path);
+        if (response.status >= 300) {
+            throw new IOException("GET " + path + " returned " + response.status);
+        }
+        return response.json();
+    }
+
+    // body of a POST whatever its status, for calls that answer errors in JSON
+    JsonObject postJson(String path, String json) throws IOException {
+        return postJsonResponse(path, json).json();
+    }
+
+    // status and body of a GET, whatever the status
+    JsonResponse getJsonResponse(String path) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int status = drain(open(path), body);
+        return new JsonResponse(status, body);
+    }
+
+    JsonResponse postJsonResponse(String path, String json) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int status = drain(send(path, json), body);
+        return new JsonResponse(status, body);
+    }
+
+    // the body is parsed on demand, so the status is there even when it is not JSON
+    static final class JsonResponse {
+        final int status;
+        private final ByteArrayOutputStream body;
+
+        private JsonResponse(int status, ByteArrayOutputStream body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        JsonObject json() {
+            return parse(body);
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    }
+
+    private HttpURLConnection send(String path, String json) throws IOException {
+        HttpURLConnection conn = open(path);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return conn;
+    }
+
+    private static int drain(HttpURLConnection conn, OutputStream body) throws IOException {
+        int status = conn.getResponseCode();
+        InputStream in = (status < 400) ? conn.getInputStream() : conn.getErrorStream();
+        if (in != null) {
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                if (body != null) {
+                    body.write(buffer, 0, n);
+                }
+            }
+            in.close();
+        }
+        return status;
+    }
+
+    private static JsonObject parse(ByteArrayOutputStream body) {
+        try (JsonReader reader = Json.createReader(new StringReader(new String(body.toByteArray(), StandardCharsets.UTF_8)))) {
+            return reader.readObject();
+        }
+    }
+}
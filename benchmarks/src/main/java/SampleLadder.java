@@ -0,0 +1,35 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import oracle.kv.table.Row;
+import oracle.kv.table.Table;
+
+/**
+ * In-memory ladder rows for the microbenchmarks, in the ladders.players
+ * table from InMemorySchema so no store is needed.
+ */
+class SampleLadder {
+
+    // players ranked 1..size
+    static List<Row> players(int size) {
+        Table table = InMemorySchema.playersTable();
+        List<Row> rows = new ArrayList<Row>(size);
+
+        for (int rank = 1; rank <= size; rank++) {
+            Row row = table.createRow();
+            row.put("ladderId", "main");
+            row.put("email", "player" + rank + "@oracle.com");
+            row.put("rank", rank);
+            row.put("name", "Player " + rank);
+            row.put("password", "");
+            row.put("challenged", false);
+            row.put("challenger", false);
+            row.put("winStreak", rank % 4);
+            row.put("wins", rank % 17);
+            row.put("losses", rank % 11);
+            row.put("rating", Ratings.INITIAL + (size - rank));
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -57,6 +58,15 @@ import org.codehaus.jackson.node.ObjectNode;
  * Note: fieldPositions does case-insensitive comparisons of the stored field
  * names, in order to implement the semantics of case-insensitive field names.
  *
+ * exactPositions:
+ * A HashMap&lt;String, Integer&gt; with the same content as fieldPositions,
+ * but keyed by the field names exactly as they were declared. Field names
+ * are almost always looked up with their declared case (for example, by
+ * Row.get/put in application code), and a hash lookup avoids the per-char,
+ * case-folding comparisons done at each level of the TreeMap. Names that
+ * are not found there are looked up in fieldPositions. It is kept in sync
+ * with fieldPositions wherever the latter is modified.
+ *
  * Note: FieldMap is @Persistent but the comparator is not saved with the
  * object. This is not a problem because in all cases a new FieldMap is
  * constructed from the raw Map when the deserialized FieldMap is used so
@@ -97,10 +107,13 @@ public class FieldMap implements Cloneable, Serializable {
 
     private transient Map<String, Integer> fieldPositions;
 
+    private transient Map<String, Integer> exactPositions;
+
     public FieldMap() {
         fieldNames = new ArrayList<String>();
         fieldProperties = new ArrayList<FieldMapEntry>();
         fieldPositions = new TreeMap<String, Integer>(FieldComparator.instance);
+        exactPositions = new HashMap<String, Integer>();
 
         fields = new TreeMap<String, FieldMapEntry>(FieldComparator.instance);
         fieldOrder = fieldNames;
@@ -122,6 +135,7 @@ public class FieldMap implements Cloneable, Serializable {
         /* Copy the fieldPositions map */
         fieldPositions = new TreeMap<String, Integer>(FieldComparator.instance);
         fieldPositions.putAll(other.fieldPositions);
+        exactPositions = new HashMap<String, Integer>(other.exactPositions);
 
         /* Copy of the fieldNames list */
         fieldNames = new ArrayList<String>(other.fieldNames);
@@ -201,6 +215,7 @@ public class FieldMap implements Cloneable, Serializable {
         fieldProperties = new ArrayList<FieldMapEntry>(fieldOrder.size());
 
         fieldPositions = new TreeMap<String, Integer>(FieldComparator.instance);
+        exactPositions = new HashMap<String, Integer>(fieldOrder.size() * 2);
 
         for (String fname : fieldNames) {
 
@@ -218,6 +233,7 @@ public class FieldMap implements Cloneable, Serializable {
 
             fieldProperties.add(newFME);
             fieldPositions.put(fname, fieldProperties.size() - 1);
+            exactPositions.put(fname, fieldProperties.size() - 1);
         }
 
         fields.clear();
@@ -235,8 +251,17 @@ public class FieldMap implements Cloneable, Serializable {
         return fieldNames;
     }
 
+    /*
+     * Returns the position of the given field, or null if there is no such
+     * field. See exactPositions in the class javadoc.
+     */
+    private Integer lookupPos(String name) {
+        Integer pos = exactPositions.get(name);
+        return (pos != null ? pos : fieldPositions.get(name));
+    }
+
     FieldMapEntry getFieldMapEntry(String name) {
-        Integer pos = fieldPositions.get(name);
+        Integer pos = lookupPos(name);
         return (pos != null ? fieldProperties.get(pos) : null);
     }
 
@@ -249,11 +274,11 @@ public class FieldMap implements Cloneable, Serializable {
     }
 
     boolean exists(String name) {
-        return fieldPositions.containsKey(name);
+        return lookupPos(name) != null;
     }
 
     int getFieldPos(String name) {
-        Integer pos = fieldPositions.get(name);
+        Integer pos = lookupPos(name);
         if (pos == null) {
             throw new IllegalArgumentException(
                 "There is no field with name " + name);
@@ -286,6 +311,7 @@ public class FieldMap implements Cloneable, Serializable {
         Collections.reverse(fieldProperties);
         for (int i = 0; i < fieldProperties.size(); ++i) {
             fieldPositions.put(fieldProperties.get(i).getFieldName(), i);
+            exactPositions.put(fieldProperties.get(i).getFieldName(), i);
         }
     }
 
@@ -297,6 +323,7 @@ public class FieldMap implements Cloneable, Serializable {
               "Field " + fme.getFieldName() + " exists already");
         }
 
+        exactPositions.put(fme.getFieldName(), fieldProperties.size());
         fieldProperties.add(fme);
         fieldNames.add(fme.getFieldName());
     }
@@ -334,6 +361,11 @@ public class FieldMap implements Cloneable, Serializable {
             }
         }
 
+        exactPositions.remove(fme.getFieldName());
+        for (int i = pos; i < fieldProperties.size(); ++i) {
+            exactPositions.put(fieldProperties.get(i).getFieldName(), i);
+        }
+
         return true;
     }
 
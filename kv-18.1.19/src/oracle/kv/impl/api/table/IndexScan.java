@@ -573,7 +573,8 @@ public class IndexScan {
                 vv,
                 fullKey,
                 rowResult.getExpirationTime(),
-                false);
+                false,
+                true /*lazy*/);
         return row;
     }
 
@@ -0,0 +1,269 @@
+/*-
+ * Copyright (C) 2011, 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This file was distributed by Oracle as part of a version of Oracle NoSQL
+ * Database made available at:
+ *
+ * http://www.oracle.com/technetwork/database/database-technologies/nosqldb/downloads/index.html
+ *
+ * Please see the LICENSE file included in the top-level directory of the
+ * appropriate version of Oracle NoSQL Database for a copy of the license and
+ * additional information.
+ */
+
+package oracle.kv.impl.api.table;
+
+import java.util.BitSet;
+import java.util.List;
+
+import oracle.kv.Value.Format;
+import oracle.kv.impl.api.table.TableImpl.SimpleAvroReader;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryDecoder;
+
+/**
+ * The Avro-encoded value of a RowImpl whose non-key fields are deserialized
+ * one at a time, the first time each is accessed, instead of all at once when
+ * the row is read. A scan that uses only a few columns of a wide table then
+ * only creates the FieldValues for those columns.
+ *
+ * Avro fields are not fixed-size, so the offset of a field within the value
+ * is only known after all the fields before it have been skipped over.
+ * fieldOffsets is a skip index of these offsets. It is filled in as far as
+ * the highest field accessed so far, so that each field is skipped at most
+ * once. Skipping reads the lengths and varints in place and allocates
+ * nothing. When all the fields are needed, decodeFields() reads them in one
+ * pass instead, as an eagerly deserialized row would.
+ *
+ * A LazyRowValue is only created if the value was written with the current
+ * version of the table, so the writer and reader schemas are the same and
+ * there is no need for a ResolvingDecoder.
+ *
+ * Instances are not thread-safe; RowImpl calls them while holding its
+ * monitor.
+ */
+class LazyRowValue {
+
+    private final TableImpl table;
+
+    private final RowImpl row;
+
+    private final Schema schema;
+
+    private final List<Field> fields;
+
+    private final SimpleAvroReader reader;
+
+    private final byte[] data;
+
+    /*
+     * fieldOffsets[i] is the offset in data of the i-th Avro field, for i
+     * less than numOffsets.
+     */
+    private final int[] fieldOffsets;
+
+    private int numOffsets;
+
+    /* The Avro fields that have been deserialized into the row */
+    private final BitSet decoded;
+
+    /* The offset in data of the next byte to skip */
+    private int cursor;
+
+    private BinaryDecoder decoder;
+
+    /**
+     * @param table the table whose current schema wrote the value
+     * @param schema the Avro schema of the table
+     * @param rowReader the reader for the target row
+     * @param data the serialized value
+     * @param offset the offset in data of the first Avro field, past the
+     * table version
+     * @param format the format of the value
+     */
+    LazyRowValue(TableImpl table,
+                 Schema schema,
+                 RowReaderImpl rowReader,
+                 byte[] data,
+                 int offset,
+                 Format format) {
+        this.table = table;
+        this.row = rowReader.getValue();
+        this.schema = schema;
+        this.fields = schema.getFields();
+        this.reader = new SimpleAvroReader(schema, schema, rowReader, format);
+        this.data = data;
+        fieldOffsets = new int[fields.size()];
+        fieldOffsets[0] = offset;
+        numOffsets = 1;
+        decoded = new BitSet(fields.size());
+    }
+
+    /**
+     * Deserializes the row field at the given position, if it is one of the
+     * fields held here and has not been deserialized already, and stores it
+     * in the row.
+     *
+     * @return true if all the fields held here have been deserialized
+     */
+    boolean decodeField(int pos) {
+
+        Field field = schema.getField(row.getFieldName(pos));
+        if (field == null) {
+            /* A primary key field */
+            return false;
+        }
+        if (decoded.get(field.pos())) {
+            return false;
+        }
+
+        try {
+            int offset = getOffset(field.pos());
+            decoder = TableJsonUtils.getDecoderFactory().binaryDecoder(
+                data, offset, data.length - offset, decoder);
+            reader.read(field, decoder);
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                "Unable to deserialize field " + field.name() +
+                " of a row of table " + table.getFullName() + ": " + e, e);
+        }
+
+        decoded.set(field.pos());
+        return decoded.cardinality() == fields.size();
+    }
+
+    /**
+     * Deserializes all the fields held here that are still missing from the
+     * row, in one pass over the value.
+     */
+    void decodeFields() {
+
+        int offset = fieldOffsets[0];
+        try {
+            decoder = TableJsonUtils.getDecoderFactory().binaryDecoder(
+                data, offset, data.length - offset, decoder);
+            for (Field field : fields) {
+                if (row.hasValue(row.getFieldPos(field.name()))) {
+                    GenericDatumReader.skip(field.schema(), decoder);
+                } else {
+                    reader.read(field, decoder);
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(
+                "Unable to deserialize a row of table " +
+                table.getFullName() + ": " + e, e);
+        }
+    }
+
+    /*
+     * Returns the offset of the i-th Avro field, skipping over the fields
+     * before it that have not been skipped yet.
+     */
+    private int getOffset(int i) {
+        while (numOffsets <= i) {
+            cursor = fieldOffsets[numOffsets - 1];
+            skip(fields.get(numOffsets - 1).schema());
+            fieldOffsets[numOffsets++] = cursor;
+        }
+        return fieldOffsets[i];
+    }
+
+    /*
+     * Moves the cursor past a value of the given type. This follows the Avro
+     * binary encoding, as written by TableImpl.writeAvro().
+     */
+    private void skip(Schema type) {
+
+        switch (type.getType()) {
+        case RECORD:
+            for (Field f : type.getFields()) {
+                skip(f.schema());
+            }
+            break;
+        case ENUM:
+        case INT:
+        case LONG:
+            readLong();
+            break;
+        case ARRAY:
+            skipBlocks(type.getElementType(), false);
+            break;
+        case MAP:
+            skipBlocks(type.getValueType(), true);
+            break;
+        case UNION:
+            skip(type.getTypes().get((int) readLong()));
+            break;
+        case FIXED:
+            cursor += type.getFixedSize();
+            break;
+        case STRING:
+        case BYTES:
+            skipBytes();
+            break;
+        case FLOAT:
+            cursor += 4;
+            break;
+        case DOUBLE:
+            cursor += 8;
+            break;
+        case BOOLEAN:
+            cursor += 1;
+            break;
+        case NULL:
+            break;
+        default:
+            throw new IllegalStateException("Unknown type: " + type);
+        }
+    }
+
+    /*
+     * Skips the blocks of an array or map. A block starts with its number of
+     * items; if the number is negative it is followed by the size of the
+     * block in bytes, and the block can be skipped without reading its items.
+     * A count of 0 ends the blocks.
+     */
+    private void skipBlocks(Schema itemType, boolean isMap) {
+        for (long count = readLong(); count != 0; count = readLong()) {
+            if (count < 0) {
+                skipBytes();
+                continue;
+            }
+            for (long i = 0; i < count; ++i) {
+                if (isMap) {
+                    /* the key */
+                    skipBytes();
+                }
+                skip(itemType);
+            }
+        }
+    }
+
+    /*
+     * Skips a length followed by that many bytes.
+     */
+    private void skipBytes() {
+        int length = (int) readLong();
+        cursor += length;
+    }
+
+    /*
+     * Reads a zig-zag encoded variable-length long, as written by Avro for
+     * int, long, enum and length values.
+     */
+    private long readLong() {
+        long n = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[cursor++] & 0xff;
+            n |= (b & 0x7fL) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return (n >>> 1) ^ -(n & 1);
+    }
+}
@@ -50,6 +50,13 @@ import com.sleepycat.persist.model.Persistent;
  * contains a map of string names to fields.  The field values may be simple or
  * complex and allowed fields are defined by the FieldDef definition of the
  * record.
+ *
+ * The field values are kept in an array indexed by field position. A subclass
+ * may leave some of the positions empty and deserialize their values only
+ * when they are accessed (see RowImpl). To support this, a method that reads
+ * a single position must do so through get(int), which the subclass
+ * overrides, and a method that reads the whole array must first call
+ * decodeFields().
  */
 @Persistent(version=2)
 public class RecordValueImpl extends ComplexValueImpl
@@ -94,6 +101,8 @@ public class RecordValueImpl extends ComplexValueImpl
         throws IOException {
 
         try {
+            decodeFields();
+
             int numFields = values.length;
 
             valueMap =
@@ -165,6 +174,7 @@ public class RecordValueImpl extends ComplexValueImpl
 
     @Override
     public int hashCode() {
+        decodeFields();
         int code = size;
         for (int i = 0; i < values.length; ++i) {
             if (values[i] == null) {
@@ -188,6 +198,9 @@ public class RecordValueImpl extends ComplexValueImpl
 
         RecordValueImpl otherValue = (RecordValueImpl) other;
 
+        decodeFields();
+        otherValue.decodeFields();
+
         /*
          * field-by-field comparison
          */
@@ -234,6 +247,9 @@ public class RecordValueImpl extends ComplexValueImpl
                 "Cannot compare RecordValues with different definitions");
         }
 
+        decodeFields();
+        otherImpl.decodeFields();
+
         for (int i = 0; i < values.length; ++i) {
             int ret = compareFieldValues(values[i], otherImpl.values[i]);
             if (ret != 0) {
@@ -271,11 +287,13 @@ public class RecordValueImpl extends ComplexValueImpl
 
     @Override
     public int size() {
+        decodeFields();
         return size;
     }
 
     @Override
     public boolean isEmpty() {
+        decodeFields();
         return size == 0;
     }
 
@@ -306,7 +324,7 @@ public class RecordValueImpl extends ComplexValueImpl
     @Override
     public FieldValueImpl get(String fieldName) {
         int pos = getDefinition().getFieldPos(fieldName);
-        return (FieldValueImpl)values[pos];
+        return get(pos);
     }
 
     @Override
@@ -317,12 +335,12 @@ public class RecordValueImpl extends ComplexValueImpl
     @Override
     public boolean contains(String fieldName) {
         int pos = getFieldPos(fieldName);
-        return values[pos] != null;
+        return get(pos) != null;
     }
 
     @Override
     public boolean contains(int pos) {
-        return values[pos] != null;
+        return get(pos) != null;
     }
 
     @Override
@@ -336,6 +354,8 @@ public class RecordValueImpl extends ComplexValueImpl
     @Override
     public FieldValue remove(String name) {
 
+        decodeFields();
+
         int pos = getFieldPos(name);
         FieldValue val = values[pos];
         values[pos] = null;
@@ -1123,6 +1143,8 @@ public class RecordValueImpl extends ComplexValueImpl
     @Override
     public JsonNode toJsonNode() {
 
+        decodeFields();
+
         ObjectNode node = JsonNodeFactory.instance.objectNode();
         /*
          * Add fields in field declaration order.  A little slower but it's
@@ -1141,6 +1163,8 @@ public class RecordValueImpl extends ComplexValueImpl
     @Override
     public void toStringBuilder(StringBuilder sb) {
 
+        decodeFields();
+
         boolean wroteFirstField = false;
         sb.append('{');
         for (int i = 0; i < values.length; ++i) {
@@ -1220,6 +1244,8 @@ public class RecordValueImpl extends ComplexValueImpl
      */
     public void addMissingFields() {
 
+        decodeFields();
+
         for (int i = 0; i < values.length; ++i) {
 
             FieldValue fv = values[i];
@@ -1243,6 +1269,8 @@ public class RecordValueImpl extends ComplexValueImpl
      */
     public void convertEmptyToNull() {
 
+        decodeFields();
+
         for (int i = 0; i < size; ++i) {
             if (((FieldValueImpl)values[i]).isEMPTY()) {
                 values[i] = NullValueImpl.getInstance();
@@ -1277,6 +1305,10 @@ public class RecordValueImpl extends ComplexValueImpl
         values[pos] = value;
     }
 
+    /*
+     * Note: the value at pos is not deserialized first, so the caller must
+     * make sure it will not be deserialized later either.
+     */
     void removeInternal(int pos) {
         if (values[pos] == null) {
             return;
@@ -1285,6 +1317,20 @@ public class RecordValueImpl extends ComplexValueImpl
         --size;
     }
 
+    /*
+     * Deserializes the values of all the fields that this record holds in
+     * serialized form.
+     */
+    void decodeFields() {
+    }
+
+    /*
+     * Returns true if the position is not empty, without deserializing it.
+     */
+    boolean hasValue(int pos) {
+        return values[pos] != null;
+    }
+
     /**
      * Enum is serialized in indexes as an integer representing the value's
      * index in the enumeration declaration.  Deserialize here.
@@ -1327,6 +1373,7 @@ public class RecordValueImpl extends ComplexValueImpl
      * assumption that the source has already been validated.
      */
     void copyFields(RecordValueImpl from) {
+        from.decodeFields();
         for (int pos = 0; pos < from.values.length; ++pos) {
             if (from.values[pos] == null) {
                 continue;
@@ -1357,6 +1404,8 @@ public class RecordValueImpl extends ComplexValueImpl
                     "\nDest type:\n" + getDefinition());
             }
 
+            src.decodeFields();
+
             for (int i = 0; i < values.length; ++i) {
                 if (src.values[i] != null) {
                     putInternal(i, src.values[i]);
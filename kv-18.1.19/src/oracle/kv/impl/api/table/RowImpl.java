@@ -34,6 +34,13 @@ import oracle.kv.table.TimeToLive;
  * Row objects are constructed by
  * {@link Table#createRow createRow} or implicitly when returned from table
  * operations.
+ *<p>
+ * A row read by a table or index scan may keep its non-key fields in
+ * serialized form (see LazyRowValue) and deserialize each one the first time
+ * it is accessed, so that a scan that uses a few columns of a wide table does
+ * not pay for deserializing all of them. Until all of them have been
+ * deserialized, fields are read and deserialized while holding the row's
+ * monitor, so such a row can still be read by multiple threads.
  */
 public class RowImpl extends RecordValueImpl implements Row, RowSerializer {
 
@@ -56,6 +63,12 @@ public class RowImpl extends RecordValueImpl implements Row, RowSerializer {
 
     private TimeToLive ttl;
 
+    /*
+     * The serialized values of the non-key fields that have not been
+     * accessed yet, or null if all the fields have been deserialized.
+     */
+    private transient volatile LazyRowValue lazyValue;
+
     public RowImpl() {
         table = null;
     }
@@ -307,6 +320,7 @@ public class RowImpl extends RecordValueImpl implements Row, RowSerializer {
     }
 
     void removeValueFields() {
+        lazyValue = null;
         if (table.hasValueFields()) {
             /* remove non-key fields if present */
             for (int i = 0; i < getNumFields(); ++i) {
@@ -325,4 +339,54 @@ public class RowImpl extends RecordValueImpl implements Row, RowSerializer {
     ValueReader<RowImpl> initRowReader() {
         return table.initRowReader(this);
     }
+
+    /*
+     * Makes this row hold its non-key fields in serialized form. Any non-key
+     * field values it holds are removed.
+     */
+    void setLazyValue(LazyRowValue value) {
+        removeValueFields();
+        lazyValue = value;
+    }
+
+    @Override
+    public void clear() {
+        lazyValue = null;
+        super.clear();
+    }
+
+    /*
+     * While the row is lazy, positions are read and deserialized while
+     * holding the monitor, so that a field is deserialized only once and a
+     * value stored by another thread is seen fully constructed. Once
+     * lazyValue has been cleared, the volatile read of null orders all those
+     * stores before the unsynchronized read.
+     */
+    @Override
+    public FieldValueImpl get(int pos) {
+        if (lazyValue == null) {
+            return super.get(pos);
+        }
+        synchronized (this) {
+            LazyRowValue value = lazyValue;
+            if (value != null && !hasValue(pos) && value.decodeField(pos)) {
+                lazyValue = null;
+            }
+            return super.get(pos);
+        }
+    }
+
+    @Override
+    void decodeFields() {
+        if (lazyValue == null) {
+            return;
+        }
+        synchronized (this) {
+            LazyRowValue value = lazyValue;
+            if (value != null) {
+                value.decodeFields();
+                lazyValue = null;
+            }
+        }
+    }
 }
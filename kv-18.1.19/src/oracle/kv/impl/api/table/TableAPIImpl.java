@@ -1989,8 +1989,23 @@ public class TableAPIImpl implements TableAPI {
                                    RowImpl row,
                                    long expirationTime,
                                    boolean keyOnly) {
+        return getRowFromValueVersion(vv, row, expirationTime, keyOnly,
+                                      false);
+    }
+
+    /**
+     * As above, but if lazy is true the non-key fields of the row may be
+     * deserialized when they are first accessed. Used for the rows returned
+     * by table and index iterators.
+     */
+    RowImpl getRowFromValueVersion(ValueVersion vv,
+                                   RowImpl row,
+                                   long expirationTime,
+                                   boolean keyOnly,
+                                   boolean lazy) {
         ValueReader<RowImpl> reader = row.initRowReader();
-        getRowFromValueVersion(vv, row, expirationTime, keyOnly, reader);
+        getRowFromValueVersion(vv, row, expirationTime, keyOnly, reader,
+                               lazy);
         return reader.getValue();
     }
 
@@ -1999,6 +2014,16 @@ public class TableAPIImpl implements TableAPI {
                                 long expirationTime,
                                 boolean keyOnly,
                                 ValueReader<?> reader) {
+        getRowFromValueVersion(vv, row, expirationTime, keyOnly, reader,
+                               false);
+    }
+
+    private void getRowFromValueVersion(ValueVersion vv,
+                                        RowSerializer row,
+                                        long expirationTime,
+                                        boolean keyOnly,
+                                        ValueReader<?> reader,
+                                        boolean lazy) {
 
         final TableImpl table = (TableImpl) row.getTable();
         int requiredVersion = 0;
@@ -2011,7 +2036,7 @@ public class TableAPIImpl implements TableAPI {
                 }
             }
             reader.setExpirationTime(expirationTime);
-            if (!table.readRowFromValueVersion(reader, vv)) {
+            if (!table.readRowFromValueVersion(reader, vv, lazy)) {
                 reader.reset();
             }
             return;
@@ -1320,7 +1320,7 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
                 }
                 ValueReader<RowImpl> reader = initRowReader(fullKey);
                 if (initRowFromByteValue(reader, valueBytes,
-                                         format, offset)){
+                                         format, offset, false)){
                     return reader.getValue();
                 }
             }
@@ -1343,6 +1343,17 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
     public boolean initRowFromBytes(byte[] keyBytes,
                                     byte[] valueBytes,
                                     RowImpl row) {
+        return initRowFromBytes(keyBytes, valueBytes, row, false);
+    }
+
+    /**
+     * As above, but the non-key fields may be deserialized lazily, as in
+     * initRowFromByteValue(RowImpl, byte[], Format, int, boolean).
+     */
+    public boolean initRowFromBytes(byte[] keyBytes,
+                                    byte[] valueBytes,
+                                    RowImpl row,
+                                    boolean lazy) {
 
         ValueReader<RowImpl> reader = initRowReader(row);
         if (!initRowFromKeyBytes(keyBytes,
@@ -1362,7 +1373,8 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
             return false;
         }
 
-        if (initRowFromByteValue(reader, valueBytes, format, 1 /*offset*/)) {
+        if (initRowFromByteValue(reader, valueBytes, format, 1 /*offset*/,
+                                 lazy)) {
             return true;
         }
 
@@ -1629,15 +1641,32 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
                                         byte[] data,
                                         Value.Format format,
                                         int offset) {
+        return initRowFromByteValue(row, data, format, offset, false);
+    }
+
+    /**
+     * As above, but if lazy is true and the record was written with the
+     * current table version, the row keeps the data and deserializes each
+     * non-key field when it is first accessed (see LazyRowValue). This is
+     * meant for scans, whose rows often have only a few of their fields
+     * used. A row that is made lazy does not have its data validated here,
+     * so a corrupt value makes the access to a field fail instead.
+     */
+    public boolean initRowFromByteValue(RowImpl row,
+                                        byte[] data,
+                                        Value.Format format,
+                                        int offset,
+                                        boolean lazy) {
         ValueReader<RowImpl> reader = initRowReader(row);
-        return initRowFromByteValue(reader, data, format, offset);
+        return initRowFromByteValue(reader, data, format, offset, lazy);
     }
 
     @SuppressWarnings("deprecation")
     private boolean initRowFromByteValue(ValueReader<?> rowReader,
                                          byte[] data,
                                          Value.Format format,
-                                         int offset) {
+                                         int offset,
+                                         boolean lazy) {
 
         /*
          * Decode the serialized data if the record is not key-only
@@ -1683,6 +1712,18 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
                 if (!(format == Value.Format.AVRO) || offset == 0) {
                     offset += 1;
                 }
+
+                if (lazy &&
+                    writerSchema == getSchema() &&
+                    format != Value.Format.AVRO &&
+                    rowReader instanceof RowReaderImpl) {
+                    RowReaderImpl reader = (RowReaderImpl)rowReader;
+                    reader.getValue().setLazyValue(
+                        new LazyRowValue(this, writerSchema, reader,
+                                         data, offset, format));
+                    return true;
+                }
+
                 Decoder decoder =
                     TableJsonUtils.getDecoderFactory().binaryDecoder
                     (data, offset, (data.length - offset), null);
@@ -1748,9 +1789,19 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
         return readRowFromValueVersion(reader, vv);
     }
 
-    @SuppressWarnings("deprecation")
     public boolean readRowFromValueVersion(ValueReader<?> reader,
                                            ValueVersion vv) {
+        return readRowFromValueVersion(reader, vv, false);
+    }
+
+    /**
+     * As above, but the non-key fields may be deserialized lazily, as in
+     * initRowFromByteValue(RowImpl, byte[], Format, int, boolean).
+     */
+    @SuppressWarnings("deprecation")
+    public boolean readRowFromValueVersion(ValueReader<?> reader,
+                                           ValueVersion vv,
+                                           boolean lazy) {
 
         assert reader != null;
 
@@ -1795,7 +1846,7 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
             return true;
         }
 
-        return initRowFromByteValue(reader, data, format, 0);
+        return initRowFromByteValue(reader, data, format, 0, lazy);
     }
 
     /**
@@ -3182,9 +3233,10 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
      * creating a tree using a ResolvingDecoder unconditionally, which is what
      * the previous code did.
      *
-     * TODO: add the ability to selectively decode, creating sparse Rows
+     * LazyRowValue uses read(Field, Decoder) to decode single fields of a
+     * row when they are first accessed.
      */
-    private static class SimpleAvroReader {
+    static class SimpleAvroReader {
         final private ValueReader<?> rowReader;
         /*
          * The reader (expected) schema. The writer schema does not need to
@@ -3201,10 +3253,10 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
          * caller and represents the current state of the table schema
          * @param row the target Row for the data, partially populated, or not
          */
-        private SimpleAvroReader(Schema writer,
-                                 Schema reader,
-                                 ValueReader<?> rowReader,
-                                 Format valueFormat) {
+        SimpleAvroReader(Schema writer,
+                         Schema reader,
+                         ValueReader<?> rowReader,
+                         Format valueFormat) {
             this.expected = reader;
             this.rowReader = rowReader;
             this.recordDef = ((TableImpl)rowReader.getTable()).getRowDef();
@@ -3245,6 +3297,15 @@ public class TableImpl implements Table, MetadataInfo, Ownable,
             resolver.drain();
         }
 
+        /**
+         * Reads a single top-level field, which the decoder must be
+         * positioned at. Only used if there is no schema evolution.
+         */
+        void read(Field f, Decoder in) throws IOException {
+            assert(resolver == null);
+            read(f.name(), f.schema(), recordDef.getField(f.name()), in);
+        }
+
         private void read(String fieldName,
                           Schema schema,
                           FieldDefImpl def,
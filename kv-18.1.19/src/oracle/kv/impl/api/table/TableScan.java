@@ -496,7 +496,8 @@ public class TableScan {
             return apiImpl.getRowFromValueVersion(vv,
                                                   fullKey,
                                                   rkvv.getExpirationTime(),
-                                                  false);
+                                                  false,
+                                                  true /*lazy*/);
         }
         return null;
     }
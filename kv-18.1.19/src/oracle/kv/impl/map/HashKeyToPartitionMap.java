@@ -14,6 +14,7 @@
 package oracle.kv.impl.map;
 
 import java.math.BigInteger;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -22,18 +23,33 @@ import oracle.kv.impl.topo.PartitionId;
 
 /**
  * A hash based implementation used to distribute keys across partitions.
+ *
+ * A key's partition is the MD5 digest of its major path, read as a signed
+ * big-endian 128-bit integer, modulo the number of partitions, plus one.
+ * This is computed with primitive arithmetic into a per-thread digest buffer
+ * and answered from a table of PartitionIds, so the per-operation path
+ * allocates nothing; the result is identical to
+ * {@code new BigInteger(digest).mod(nPartitions) + 1}.
  */
 public class HashKeyToPartitionMap implements KeyToPartitionMap {
 
     private static final long serialVersionUID = 1L;
 
+    /* Length of an MD5 digest in bytes. */
+    private static final int DIGEST_LENGTH = 16;
+
+    /* Kept as a BigInteger so the serialized form is unchanged. */
     final BigInteger nPartitions;
 
     transient DigestCache digestCache = new DigestCache();
 
+    /* Rebuilt on first use after deserialization. */
+    private transient Partitions partitions;
+
     public HashKeyToPartitionMap(int nPartitions) {
         super();
         this.nPartitions = new BigInteger(Integer.toString(nPartitions));
+        this.partitions = new Partitions(nPartitions);
     }
 
     @Override
@@ -46,27 +62,121 @@ public class HashKeyToPartitionMap implements KeyToPartitionMap {
         if (digestCache == null) {
             digestCache = new DigestCache();
         }
-        /* Clone one for use by this thread. */
-        final MessageDigest md = digestCache.get();
+        Partitions table = partitions;
+        if (table == null) {
+            /* Benign race: every thread builds an equivalent table. */
+            table = new Partitions(nPartitions.intValue());
+            partitions = table;
+        }
+
+        /* Per-thread digest and output buffer. */
+        final Digest digest = digestCache.get();
 
         /* Digest Key major path. */
-        md.update(keyBytes, 0, Key.getMajorPathLength(keyBytes));
+        digest.md.update(keyBytes, 0, Key.getMajorPathLength(keyBytes));
+
+        return table.ids[table.index(digest.finish())];
+    }
+
+    /**
+     * The partition ids handed out, and the constant needed to reduce a
+     * negative digest. Fields are final, so an instance published through a
+     * data race is still seen fully built.
+     */
+    static final class Partitions {
+        final int n;
+
+        /* 2^128 mod n: a digest with its top bit set stands for value - 2^128. */
+        final long wrap;
+
+        /* ids[i] is partition i + 1. */
+        final PartitionId[] ids;
+
+        Partitions(int n) {
+            this.n = n;
+            this.ids = new PartitionId[Math.max(n, 0)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = new PartitionId(i + 1);
+            }
+
+            long r = 0;
+            if (n > 0) {
+                r = 1 % n;
+                for (int bit = 0; bit < 128; bit++) {
+                    r = (r << 1) % n;
+                }
+            }
+            this.wrap = r;
+        }
 
-        final BigInteger index = new BigInteger(md.digest()).mod(nPartitions);
-        return new PartitionId(index.intValue() + 1);
+        /**
+         * Same as {@code new BigInteger(digest).mod(BigInteger.valueOf(n))},
+         * as an int. Throws ArithmeticException if n is not positive, like
+         * BigInteger.mod does.
+         */
+        int index(byte[] digest) {
+            if (n <= 0) {
+                throw new ArithmeticException("BigInteger: modulus not positive");
+            }
+
+            /*
+             * Unsigned value mod n, 32 bits at a time; r < n < 2^31, so
+             * (r << 32 | word) stays below 2^63.
+             */
+            long r = 0;
+            for (int i = 0; i < DIGEST_LENGTH; i += 4) {
+                final long word = ((digest[i] & 0xffL) << 24) |
+                                  ((digest[i + 1] & 0xffL) << 16) |
+                                  ((digest[i + 2] & 0xffL) << 8) |
+                                  (digest[i + 3] & 0xffL);
+                r = ((r << 32) | word) % n;
+            }
+
+            if (digest[0] < 0) {
+                r -= wrap;
+                if (r < 0) {
+                    r += n;
+                }
+            }
+            return (int) r;
+        }
+    }
+
+    /**
+     * A message digest and the buffer its result is written to, reused by
+     * one thread for every key it maps.
+     */
+    static final class Digest {
+        final MessageDigest md;
+        private final byte[] out = new byte[DIGEST_LENGTH];
+
+        Digest(MessageDigest md) {
+            this.md = md;
+        }
+
+        /* Completes the digest into the buffer, which is reused by the next call. */
+        byte[] finish() {
+            try {
+                md.digest(out, 0, DIGEST_LENGTH);
+            } catch (DigestException e) {
+                throw new IllegalStateException("MD5 digest failed", e);
+            }
+            return out;
+        }
     }
 
     /**
      * Implements a per-thread cache using a thread local, to mitigate the cost
-     * of calling MessageDigest.getInstance("MD5").
+     * of calling MessageDigest.getInstance("MD5") and of allocating the
+     * digest output.
      */
-    static class DigestCache extends ThreadLocal<MessageDigest> {
+    static class DigestCache extends ThreadLocal<Digest> {
 
         /** Create the message digest. */
         @Override
-        protected MessageDigest initialValue() {
+        protected Digest initialValue() {
             try {
-                return MessageDigest.getInstance("MD5");
+                return new Digest(MessageDigest.getInstance("MD5"));
             } catch (NoSuchAlgorithmException e) {
                 throw new IllegalStateException("MD5 algorithm unavailable");
             }
@@ -74,10 +184,10 @@ public class HashKeyToPartitionMap implements KeyToPartitionMap {
 
         /** Reset the message digest before returning. */
         @Override
-        public MessageDigest get() {
-            final MessageDigest md = super.get();
-            md.reset();
-            return md;
+        public Digest get() {
+            final Digest digest = super.get();
+            digest.md.reset();
+            return digest;
         }
     }
 }
@@ -42,6 +42,7 @@ import oracle.kv.impl.query.runtime.RecConstrIter;
 import oracle.kv.impl.query.runtime.ReceiveIter;
 import oracle.kv.impl.query.runtime.SeqMapIter;
 import oracle.kv.impl.query.runtime.SFWIter;
+import oracle.kv.impl.query.runtime.SortIter;
 import oracle.kv.impl.query.runtime.ArraySliceIter;
 import oracle.kv.impl.query.runtime.UpdateFieldIter;
 import oracle.kv.impl.query.runtime.UpdateRowIter;
@@ -222,17 +223,33 @@ public class CodeGenerator extends ExprVisitor {
          */
         theQCB.setPushedDistributionKind(e.getDistributionKind());
 
-        PlanIter iter = new ReceiveIter(
+        /*
+         * With a generic sort, the ReceiveIter just collects the results,
+         * and a SortIter on top of it sorts them.
+         */
+        boolean genericSort = e.hasGenericSort();
+
+        ReceiveIter recvIter = new ReceiveIter(
             e, resultReg, inputIter,
             e.getType().getDef(), e.mayReturnNULL(),
-            e.getSortFieldPositions(), e.getSortSpecs(),
+            (genericSort ? null : e.getSortFieldPositions()),
+            (genericSort ? null : e.getSortSpecs()),
             e.getPrimKeyPositions(),
             e.getDistributionKind(), e.getPrimaryKey(),
             pushedExternalIters,
             theQCB.getNumRegs(), theQCB.getNumIterators(),
             e.getIsUpdate());
 
-        theQCB.setReceiveIter((ReceiveIter)iter);
+        theQCB.setReceiveIter(recvIter);
+
+        PlanIter iter = recvIter;
+
+        if (genericSort) {
+            iter = new SortIter(e, resultReg, recvIter,
+                                e.getType().getDef(),
+                                e.getSortFieldPositions(),
+                                e.getSortSpecs());
+        }
 
         theIters.push(iter);
     }
@@ -871,6 +888,7 @@ public class CodeGenerator extends ExprVisitor {
             fromIters, varNames, whereIter,
             selectIters, sfw.getFieldNamesArray(),
             sfw.getNumGroupByExprs(),
+            sfw.hasHashGroupBy(),
             sfw.doNullOnEmpty(),
             offsetIter, limitIter);
 
@@ -95,6 +95,8 @@ class Distributer extends ExprVisitor {
         Expr limit = sfw.getLimit();
         boolean hasSort = (sfw.getNumSortExprs() != 0);
         boolean hasGroupBy = sfw.hasGroupBy();
+        boolean hasHashGroupBy = sfw.hasHashGroupBy();
+        boolean hasGenericSort = sfw.hasGenericSort();
         boolean hasOffset = (offset != null);
         boolean hasLimit = (limit != null);
         boolean eliminateIndexDups = rcv.getEliminateIndexDups();
@@ -113,8 +115,13 @@ class Distributer extends ExprVisitor {
         /*
          * If it is a single-partition query, sfw will be sent as-is to the
          * server and there is no need to add anything in the client-side plan.
+         * The exception is hash-based grouping: the RN may send the groups
+         * of a partition in more than one batch, each with its own partial
+         * aggregates, so the client must still regroup them. The same holds
+         * for a generic sort: each batch is sorted on its own, so the client
+         * must still sort all of them.
          */
-        if (isSinglePartition) {
+        if (isSinglePartition && !hasHashGroupBy && !hasGenericSort) {
             return false;
         }
 
@@ -141,6 +148,9 @@ class Distributer extends ExprVisitor {
          *   the above SELECT clause; also add the sort specs.
          * - Add to the client SELECT clause the fields that correspond to the
          *   fields of the original SFW (before the addition of the sort exprs).
+         * - If the sort is a generic one, mark the receive expr as such, so
+         *   that the received results are sorted by a SortIter, instead of
+         *   being merge-sorted.
          *
          * If the SFW expr has grouping do the following:
          * - Add to the client SELECT clause the fields that correspond to the
@@ -149,7 +159,8 @@ class Distributer extends ExprVisitor {
          *   to re-aggregate the partial aggregates coming from the RNs.
          * - Make the receive expr a sorting one by adding as the sort
          *   positions the positions of the grouping exprs within the SELECT
-         *   clause. 
+         *   clause. If the grouping is hash-based, the client SFW regroups
+         *   via hashing as well, so the receive expr does not sort.
          *
          * If the SFW expr has offset-limit and the query is not single-
          * partition, do the following:
@@ -159,6 +170,10 @@ class Distributer extends ExprVisitor {
          * - Change the limit in the server SFW to be the sum of the original
          *   limit plus the original offset. This is the maximum number of
          *   results that any RN will need to compute and send to the client.
+         *   With hash-based grouping or a generic sort, an RN does not know
+         *   which of its results will survive the offset-limit, so both are
+         *   removed from the server SFW. For a generic sort, the client-side
+         *   sort then keeps only the first offset+limit results.
          *
          * If dup elimination is needed:
          * - Add in the SELECT clause of the server SFW exprs to retrieve the
@@ -175,6 +190,7 @@ class Distributer extends ExprVisitor {
             int[] sortExprPositions = sfw.addSortExprsToSelect();
 
             rcv.addSort(sortExprPositions, sfw.getSortSpecs());
+            rcv.setGenericSort(hasGenericSort);
 
             sfw.setDoNullOnEmpty(false);
         }
@@ -248,8 +264,9 @@ class Distributer extends ExprVisitor {
         if (hasGroupBy) {
             int numGBExprs = sfw.getNumGroupByExprs();
             clientSFW.setNumGroupByExprs(numGBExprs);
+            clientSFW.setHashGroupBy(hasHashGroupBy);
 
-            if (numGBExprs > 0) {
+            if (numGBExprs > 0 && !hasHashGroupBy) {
                 int[] sortPositions = new int[numGBExprs];
                 SortSpec[] sortSpecs = new SortSpec[numGBExprs];
 
@@ -264,7 +281,14 @@ class Distributer extends ExprVisitor {
 
         if (hasOffset || hasLimit) {
 
-            if (hasLimit && hasOffset) {
+            if (hasHashGroupBy || hasGenericSort) {
+                if (hasOffset) {
+                    sfw.removeOffset(false/*destroy*/);
+                }
+                if (hasLimit) {
+                    sfw.removeLimit(false/*destroy*/);
+                }
+            } else if (hasLimit && hasOffset) {
                 sfw.removeOffset(false/*destroy*/);
                 Expr newLimit = FuncArithOp.createArithExpr(offset, limit, "+");
                 sfw.setLimit(newLimit, false/*destroy*/);
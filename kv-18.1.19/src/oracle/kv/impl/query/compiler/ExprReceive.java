@@ -31,7 +31,8 @@ import oracle.kv.impl.query.types.ExprType;
  * in which case the receive expr acts as a UNION ALL expr, collecting and
  * propagating the results it receives from its children. Furthermore, the
  * receive expr may perform a merge-sort over its inputs (if the inputs
- * return sorted results).
+ * return sorted results), or a full sort of the received results (if they
+ * are not sorted).
  *
  * Receive exprs are always created as parents of the BaseTable exprs in the
  * exprs graph, After their creation, Receive exprs are pulled-up as far as
@@ -40,6 +41,11 @@ import oracle.kv.impl.query.types.ExprType;
  * theInput:
  * The expr producing the input to this receive expr.
  *
+ * theIsGenericSort:
+ * True if the results must be sorted by theSortFieldPositions, but the
+ * servers send them unsorted (see ExprSFW.theIsGenericSort). Instead of
+ * merge-sorting, the ReceiveIter is then placed under a SortIter.
+ *
  * theEliminateIndexDups:
  * Whether or not to eliminate index dups. These are duplicate results that
  * may be generated during the scan of a multikey (array/map) index.
@@ -57,6 +63,8 @@ class ExprReceive extends Expr {
 
     private SortSpec[] theSortSpecs;
 
+    private boolean theIsGenericSort;
+
     private DistributionKind theDistributionKind;
 
     private PrimaryKeyImpl thePrimaryKey;
@@ -149,6 +157,14 @@ class ExprReceive extends Expr {
         theType = computeType();
     }
 
+    void setGenericSort(boolean v) {
+        theIsGenericSort = v;
+    }
+
+    boolean hasGenericSort() {
+        return theIsGenericSort;
+    }
+
     int[] getSortFieldPositions() {
         return theSortFieldPositions;
     }
@@ -206,6 +222,9 @@ class ExprReceive extends Expr {
         if (theSortFieldPositions != null) {
             formatter.indent(sb);
             sb.append("Sort Field Positions : ").append(theSortFieldPositions);
+            if (theIsGenericSort) {
+                sb.append(" (generic)");
+            }
             sb.append(",\n");
         }
         if (thePrimKeyPositions != null) {
@@ -124,6 +124,13 @@ import oracle.kv.table.Index;
  * and it is set to true by that method, if any of the exprs in the original
  * SELECT list does not match with the corresponding expr in the SELECT list of
  * the inner SFW.
+ *
+ * theIsHashGroupBy:
+ * True if the grouping exprs are not a prefix of the primary key or of any
+ * non-multikey secondary index. In this case the table rows do not arrive
+ * ordered by the grouping exprs, so the SFWIter groups them in a hash table
+ * instead. At the RNs this produces partial groups, which the client-side SFW
+ * regroups in a hash table as well, so the RCV does not need to sort.
  * 
  * theSortExprs:
  *
@@ -131,6 +138,13 @@ import oracle.kv.table.Index;
  *
  * theUsePrimaryIndexForSort:
  *
+ * theIsGenericSort:
+ * True if no index returns the rows in the order-by order, or if the sort
+ * specs cannot be satisfied by an index scan (mixed directions, or NULLs
+ * ordered differently than in indexes). In this case the RNs return their
+ * rows unsorted and the client sorts all of them via a SortIter placed on
+ * top of the RCV (see Distributer).
+ *
  * theSortingIndexes:
  *
  * theOffsetExpr:
@@ -311,12 +325,16 @@ class ExprSFW extends Expr {
 
     private boolean theNeedOuterSFWForGroupBy;
 
+    private boolean theIsHashGroupBy;
+
     private ArrayList<Expr> theSortExprs;
 
     private ArrayList<SortSpec> theSortSpecs;
 
     private boolean theUsePrimaryIndexForSort = false;
 
+    private boolean theIsGenericSort;
+
     private ArrayList<IndexImpl> theSortingIndexes = null;
 
     private Expr theOffsetExpr;
@@ -632,6 +650,14 @@ class ExprSFW extends Expr {
         return theNumGroupByExprs >= 0;
     }
 
+    boolean hasHashGroupBy() {
+        return theIsHashGroupBy;
+    }
+
+    void setHashGroupBy(boolean v) {
+        theIsHashGroupBy = v;
+    }
+
     boolean needOuterSFWForGroupBy() {
         return theNeedOuterSFWForGroupBy;
     }
@@ -869,6 +895,7 @@ class ExprSFW extends Expr {
         theSortSpecs = null;
         theSortingIndexes = null;
         theUsePrimaryIndexForSort = false;
+        theIsGenericSort = false;
     }
 
     boolean hasSort() {
@@ -883,6 +910,10 @@ class ExprSFW extends Expr {
         return theSortingIndexes != null && !theSortingIndexes.isEmpty();
     }
 
+    boolean hasGenericSort() {
+        return theIsGenericSort;
+    }
+
     ArrayList<IndexImpl> getSortingIndexes() {
         return theSortingIndexes;
     }
@@ -915,7 +946,8 @@ class ExprSFW extends Expr {
 
     /*
      * Method to find the index to use for the sort or group-by and 
-     * determine the direction, or throw error if no applicable index.
+     * determine the direction. A group-by with no applicable index is done
+     * via hashing instead, and an order-by via a generic sort.
      */
     void analyseOrderOrGroupBy(boolean orderby) {
 
@@ -951,18 +983,15 @@ class ExprSFW extends Expr {
             for (i = 1; i < theSortSpecs.size(); ++i) {
                 spec = theSortSpecs.get(i);
                 if (desc != spec.theIsDesc || nullsLast != (!spec.theNullsFirst)) {
-                    throw new QueryException(
-                        "In the current implementation, all order-by specs " +
-                        "must have the same ordering direction and the same " +
-                        "relative order for NULLs",
-                        getSortExpr(i).getLocation());
+                    theIsGenericSort = true;
+                    return;
                 }
             }
 
+            /* The NULLs ordering is not the one of an index scan */
             if ((desc && nullsLast) || (!desc && !nullsLast)) {
-                throw new QueryException(
-                    "NULLs ordering is not compatible with the way " +
-                    "NULLs are ordered in indexes.");
+                theIsGenericSort = true;
+                return;
             }
 
             tableExpr.setDirection(direction);
@@ -1080,15 +1109,20 @@ class ExprSFW extends Expr {
             }
         }
 
+        if (theSortingIndexes.isEmpty() && !orderby) {
+            theSortingIndexes = null;
+            theIsHashGroupBy = true;
+            return;
+        }
+
+        /*
+         * No index returns the rows in the desired order, so they will be
+         * sorted at the client, and the scan direction does not matter.
+         */
         if (theSortingIndexes.isEmpty()) {
-            throw new QueryException(
-                opKind + "cannot be performed because there is no index " +
-                "that orders the table rows in the desired order (in the " +
-                "current implementation sorting and grouping are possible " +
-                "only if the ORDER/GROUP BY clause contains N expressions " +
-                "that match the " +
-                "first N fields on an index, and these fields are not " +
-                "multi-key", getLocation());
+            theSortingIndexes = null;
+            theIsGenericSort = true;
+            tableExpr.setDirection(Direction.FORWARD);
         }
     }
 
@@ -1388,8 +1422,16 @@ class ExprSFW extends Expr {
 
         formatter.indent(sb);
         sb.append("GROUP BY:").append(theNumGroupByExprs);
+        if (theIsHashGroupBy) {
+            sb.append(" (hash)");
+        }
         sb.append("\n\n");
 
+        if (theIsGenericSort) {
+            formatter.indent(sb);
+            sb.append("ORDER BY: (generic)\n\n");
+        }
+
         formatter.indent(sb);
         sb.append("SELECT:\n");
 
@@ -2817,6 +2817,7 @@ class IndexAnalyzer implements Comparable<IndexAnalyzer> {
         if (isKeyOnly) {
             assert(theIsPrimary || !theIndex.isMultiKey());
             assert(!theSFW.hasSort() ||
+                   theSFW.hasGenericSort() ||
                    (theSFW.hasPrimaryIndexBasedSort() && theIsPrimary) ||
                    (theSFW.getSortingIndexes().contains(theIndex)));
         }
@@ -114,8 +114,10 @@ class OptRulePushIndexPreds {
             return false;
         }
 
-        boolean hasSort = (sfw.hasSort() ||
-                           (sfw.hasGroupBy() && sfw.getNumGroupByExprs() > 0));
+        boolean hasSort = ((sfw.hasSort() && !sfw.hasGenericSort()) ||
+                           (sfw.hasGroupBy() &&
+                            sfw.getNumGroupByExprs() > 0 &&
+                            !sfw.hasHashGroupBy()));
         String sortingOp = (sfw.hasSort() ? "order-by" : "group-by");
 
         IndexHint forceIndexHint = tableExpr.getForceIndexHint();
@@ -159,6 +161,16 @@ class OptRulePushIndexPreds {
 
             IndexImpl forcedIndex = forceIndexHint.theIndex;
 
+            if (sfw.hasHashGroupBy() &&
+                forcedIndex != null &&
+                forcedIndex.isMultiKey()) {
+                throw new QueryException(
+                    "Cannot perform group-by because the index forced via " +
+                    "a hint is a multi-key index.\n" +
+                    "Hint index    : " + forcedIndex.getName() + "\n",
+                    sfw.getLocation());
+            }
+
             if (hasSort &&
                 ((sfw.hasPrimaryIndexBasedSort() && forcedIndex != null) ||
                  (sfw.getSortingIndexes() != null &&
@@ -253,6 +265,15 @@ class OptRulePushIndexPreds {
 
                 IndexImpl index = (IndexImpl)entry.getValue();
 
+                /*
+                 * A multikey index may return a row more than once, and
+                 * the duplicates cannot be eliminated after the RNs have
+                 * grouped them (see ExprSFW.analyseOrderOrGroupBy).
+                 */
+                if (sfw.hasHashGroupBy() && index.isMultiKey()) {
+                    continue;
+                }
+
                 IndexAnalyzer analyzer =
                     new IndexAnalyzer(sfw, tableExpr, tablePos, index);
 
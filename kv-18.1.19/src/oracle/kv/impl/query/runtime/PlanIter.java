@@ -193,7 +193,10 @@ public abstract class PlanIter implements FastExternalizable {
         FUNC_MIN_MAX,
         SEQ_MAP,
 
-        REC_CONSTR;
+        REC_CONSTR,
+
+        // Added in R18.2
+        SORT;
     }
 
     /*
@@ -747,6 +750,9 @@ public abstract class PlanIter implements FastExternalizable {
         case SEQ_MAP:
             iter = new SeqMapIter(in, serialVersion);
             break;
+        case SORT:
+            iter = new SortIter(in, serialVersion);
+            break;
         default:
             throw new QueryStateException(
                 "Unknown query iterator kind: " + kind);
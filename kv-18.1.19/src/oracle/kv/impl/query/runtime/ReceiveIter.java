@@ -1176,6 +1176,22 @@ public class ReceiveIter extends PlanIter {
     }
 
     int compareAtomics(FieldValueImpl v1, FieldValueImpl v2, int sortPos) {
+        return compareAtomics(v1, v2,
+                              theSortSpecs[sortPos].theIsDesc,
+                              theSortSpecs[sortPos].theNullsFirst);
+    }
+
+    /*
+     * Compares two values returned by a sort expr. EMPTY, json null, and
+     * NULL are placed, in this order, before or after all other values,
+     * according to nullsFirst. If isDesc is true, the result of this
+     * comparison is then reversed.
+     */
+    static int compareAtomics(
+        FieldValueImpl v1,
+        FieldValueImpl v2,
+        boolean isDesc,
+        boolean nullsFirst) {
 
         int comp;
 
@@ -1183,43 +1199,43 @@ public class ReceiveIter extends PlanIter {
             if (v2.isNull()) {
                 comp = 0;
             } else {
-                comp = (theSortSpecs[sortPos].theNullsFirst ? -1 : 1);
+                comp = (nullsFirst ? -1 : 1);
             }
 
         } else if (v2.isNull()) {
-            comp = (theSortSpecs[sortPos].theNullsFirst ? 1 : -1);
+            comp = (nullsFirst ? 1 : -1);
 
         } else if (v1.isEMPTY()) {
             if (v2.isEMPTY()) {
                 comp = 0;
             } else if (v2.isJsonNull()) {
-                comp = (theSortSpecs[sortPos].theNullsFirst ? 1 : -1);
+                comp = (nullsFirst ? 1 : -1);
             } else {
-                comp = (theSortSpecs[sortPos].theNullsFirst ? -1 : 1);
+                comp = (nullsFirst ? -1 : 1);
             }
 
         } else if (v2.isEMPTY()) {
             if (v1.isJsonNull()) {
-                comp = (theSortSpecs[sortPos].theNullsFirst ? -1 : 1);
+                comp = (nullsFirst ? -1 : 1);
             } else {
-                comp = (theSortSpecs[sortPos].theNullsFirst ? 1 : -1);
+                comp = (nullsFirst ? 1 : -1);
             }
 
         } else if (v1.isJsonNull()) {
-            if (v1.isJsonNull()) {
+            if (v2.isJsonNull()) {
                 comp = 0;
             } else {
-                comp = (theSortSpecs[sortPos].theNullsFirst ? -1 : 1);
+                comp = (nullsFirst ? -1 : 1);
             }
 
         } else if (v2.isJsonNull()) {
-            comp = (theSortSpecs[sortPos].theNullsFirst ? 1 : -1);
+            comp = (nullsFirst ? 1 : -1);
 
         } else {
             comp = v1.compareTo(v2);
         }
 
-        return (theSortSpecs[sortPos].theIsDesc ? -comp : comp);
+        return (isDesc ? -comp : comp);
     }
 
     /**
@@ -272,6 +272,10 @@ public class RuntimeControlBlock {
         return theExecuteOptions.getMaxReadKB();
     }
 
+    long getMaxMemoryConsumption() {
+        return theExecuteOptions.getMaxMemoryConsumption();
+    }
+
     public TableQuery getQueryOp() {
         return theQueryOp;
     }
@@ -16,10 +16,13 @@ package oracle.kv.impl.query.runtime;
 import static oracle.kv.impl.util.SerialVersion.QUERY_VERSION_2;
 import static oracle.kv.impl.util.SerialVersion.QUERY_VERSION_4;
 import static oracle.kv.impl.util.SerialVersion.QUERY_VERSION_6;
+import static oracle.kv.impl.util.SerialVersion.QUERY_VERSION_7;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
 
 import oracle.kv.impl.api.table.EmptyValueImpl;
 import oracle.kv.impl.api.table.FieldDefImpl;
@@ -62,6 +65,17 @@ import oracle.kv.impl.util.SerialVersion;
  * see ExprSFW.theNumGroupByExprs
  * Introduced in v18.1
  *
+ * theIsHashGroupBy:
+ * see ExprSFW.theIsHashGroupBy. The groups are kept in a hash table, keyed
+ * by the values of the grouping columns, and are produced once the input is
+ * exhausted. At an RN the table is also flushed early, when it holds as many
+ * groups as still fit in the current batch or uses SERVER_HASH_GB_MEMORY
+ * bytes: the group that did not fit is sent to the client as the resume GB
+ * tuple, and becomes the first group of the next batch. The client regroups
+ * all these partial groups in its own hash table, which may use up to
+ * ExecuteOptions.getMaxMemoryConsumption() bytes.
+ * Introduced in v18.2
+ *
  * theDoNullOnEmpty:
  * see ExprSFW.theDoNullOnEmpty.
  * Introduced in v4.4
@@ -73,6 +87,51 @@ import oracle.kv.impl.util.SerialVersion;
  */
 public class SFWIter extends PlanIter {
 
+    private static final long SERVER_HASH_GB_MEMORY = 8 * 1024 * 1024;
+
+    /*
+     * The values of the grouping columns of a group, used as the key of the
+     * hash table in a hash-based group-by. The values array may be a whole
+     * group tuple; only its first theNumValues entries are compared.
+     */
+    private static class GroupKey {
+
+        private final FieldValueImpl[] theValues;
+
+        private final int theNumValues;
+
+        GroupKey(FieldValueImpl[] values, int numValues) {
+            theValues = values;
+            theNumValues = numValues;
+        }
+
+        @Override
+        public int hashCode() {
+            int code = 1;
+            for (int i = 0; i < theNumValues; ++i) {
+                code = 31 * code + theValues[i].hashCode();
+            }
+            return code;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+
+            if (!(other instanceof GroupKey)) {
+                return false;
+            }
+
+            FieldValueImpl[] otherValues = ((GroupKey)other).theValues;
+
+            for (int i = 0; i < theNumValues; ++i) {
+                if (!theValues[i].equals(otherValues[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     public static class SFWIterState extends PlanIterState {
 
         private int theNumBoundVars;
@@ -89,9 +148,32 @@ public class SFWIter extends PlanIter {
 
         private boolean theHaveGBTuple;
 
+        /* The groups of a hash-based group-by */
+        private HashMap<GroupKey, FieldValueImpl[]> theGroups;
+
+        private long theGroupsMemory;
+
+        /* Reused to look up the group of each input tuple */
+        private GroupKey theProbeKey;
+
+        /* Non-null while the groups are being returned */
+        private Iterator<FieldValueImpl[]> theGroupsToEmit;
+
+        /* The group that started the current flush of an RN's groups */
+        private FieldValueImpl[] thePendingGroup;
+
+        private boolean theInputDone;
+
         SFWIterState(SFWIter iter) {
             theGBTuple = new FieldValueImpl[iter.theColumnIters.length];
             theSwapGBTuple = new FieldValueImpl[iter.theColumnIters.length];
+
+            if (iter.theIsHashGroupBy) {
+                theGroups = new HashMap<GroupKey, FieldValueImpl[]>();
+                theProbeKey = new GroupKey(
+                    new FieldValueImpl[iter.theNumGBColumns],
+                    iter.theNumGBColumns);
+            }
         }
 
         @Override
@@ -100,6 +182,14 @@ public class SFWIter extends PlanIter {
             theNumBoundVars = 0;
             theNumResults = 0;
             theHaveGBTuple = false;
+
+            if (theGroups != null) {
+                theGroups.clear();
+                theGroupsMemory = 0;
+                theGroupsToEmit = null;
+                thePendingGroup = null;
+                theInputDone = false;
+            }
         }
     }
 
@@ -115,6 +205,8 @@ public class SFWIter extends PlanIter {
 
     private final int theNumGBColumns;
 
+    private final boolean theIsHashGroupBy;
+
     private final boolean theDoNullOnEmpty;
 
     private final int[] theTupleRegs;
@@ -135,6 +227,7 @@ public class SFWIter extends PlanIter {
         PlanIter[] columnIters,
         String[] columnNames,
         int numGBColumns,
+        boolean isHashGroupBy,
         boolean nullOnEmpty,
         PlanIter offsetIter,
         PlanIter limitIter) {
@@ -146,6 +239,7 @@ public class SFWIter extends PlanIter {
         theColumnIters = columnIters;
         theColumnNames = columnNames;
         theNumGBColumns = numGBColumns;
+        theIsHashGroupBy = isHashGroupBy;
         theDoNullOnEmpty = nullOnEmpty;
         theTupleRegs = tupleRegs;
         theTypeDefinition = e.getType().getDef();
@@ -203,6 +297,12 @@ public class SFWIter extends PlanIter {
         } else {
             theDoNullOnEmpty = in.readBoolean();
         }
+
+        if (serialVersion >= QUERY_VERSION_7) {
+            theIsHashGroupBy = in.readBoolean();
+        } else {
+            theIsHashGroupBy = false;
+        }
     }
 
     /**
@@ -290,6 +390,22 @@ public class SFWIter extends PlanIter {
              * which is rejecting all order-by queries.
              */
         }
+
+        if (serialVersion >= QUERY_VERSION_7) {
+            out.writeBoolean(theIsHashGroupBy);
+        } else if (theIsHashGroupBy) {
+
+            final String QV7String =
+                SerialVersion.getKVVersion(QUERY_VERSION_7).
+                getNumericVersionString();
+
+            throw new QueryException(
+                "Cannot execute a group-by query whose grouping expressions " +
+                "do not match the first fields of an index at a server " +
+                "whose version is less than " +
+                QV7String + "\nserialVersion = " + serialVersion +
+                " expected version = " + QUERY_VERSION_7);
+        }
     }
 
     @Override
@@ -350,7 +466,14 @@ public class SFWIter extends PlanIter {
 
         ResumeInfo ri = rcb.getResumeInfo();
 
-        if (ri != null && ri.getGBTuple() != null && theNumGBColumns >= 0) {
+        if (ri != null && ri.getGBTuple() != null && theIsHashGroupBy) {
+            /* The group that did not fit in the previous batch */
+            addHashGroup(state, ri.getGBTuple());
+            ri.setGBTuple(null);
+
+        } else if (ri != null &&
+                   ri.getGBTuple() != null &&
+                   theNumGBColumns >= 0) {
             state.theGBTuple = ri.getGBTuple();
             state.theHaveGBTuple = true;
 
@@ -426,6 +549,18 @@ public class SFWIter extends PlanIter {
         SFWIterState state,
         boolean localOnly) {
 
+        if (state.theGroupsToEmit != null) {
+
+            if (emitHashGroup(rcb, state)) {
+                return true;
+            }
+
+            if (state.theInputDone) {
+                state.done();
+                return false;
+            }
+        }
+
         /* while loop for group by */
         while (true) {
 
@@ -436,6 +571,9 @@ public class SFWIter extends PlanIter {
                 do {
                     if (!getNextFROMTuple(rcb, state, localOnly)) {
 
+                        if (theIsHashGroupBy) {
+                            return produceHashGroups(rcb, state);
+                        }
                         if (theNumGBColumns >= 0) {
                             return produceLastGroup(rcb, state);
                         }
@@ -460,6 +598,10 @@ public class SFWIter extends PlanIter {
             } else {
                 if (!getNextFROMTuple(rcb, state, localOnly)) {
 
+                    if (theIsHashGroupBy) {
+                        return produceHashGroups(rcb, state);
+                    }
+
                     if (theNumGBColumns >= 0) {
                         return produceLastGroup(rcb, state);
                     }
@@ -561,7 +703,11 @@ public class SFWIter extends PlanIter {
                 break;
             }
 
-            if (groupInputTuple(rcb, state)) {
+            if (theIsHashGroupBy) {
+                if (hashInputTuple(rcb, state)) {
+                    break;
+                }
+            } else if (groupInputTuple(rcb, state)) {
                 break;
             }
         }
@@ -622,7 +768,12 @@ public class SFWIter extends PlanIter {
         }
 
         if (state.theNumBoundVars < 0) {
-            state.done();
+            if (theIsHashGroupBy) {
+                /* Not done until all the groups have been returned */
+                state.theInputDone = true;
+            } else {
+                state.done();
+            }
             return false;
         }
 
@@ -818,6 +969,198 @@ public class SFWIter extends PlanIter {
         return true;
     }
 
+    /*
+     * Adds the current input tuple to its group in the hash table, starting
+     * a new group if needed. Returns true if the new group does not fit in
+     * the RN's table; in this case the table is being flushed and its first
+     * group is in the result regs.
+     */
+    private boolean hashInputTuple(
+        RuntimeControlBlock rcb,
+        SFWIterState state) {
+
+        int numCols = theColumnIters.length;
+        FieldValueImpl[] key = state.theProbeKey.theValues;
+
+        for (int i = 0; i < theNumGBColumns; ++i) {
+            key[i] = rcb.getRegVal(theColumnIters[i].getResultReg());
+        }
+
+        FieldValueImpl[] group = state.theGroups.get(state.theProbeKey);
+
+        if (group != null) {
+
+            for (int i = theNumGBColumns; i < numCols; ++i) {
+                theColumnIters[i].initAggrValue(rcb, group[i]);
+                theColumnIters[i].next(rcb);
+                theColumnIters[i].reset(rcb);
+                group[i] = theColumnIters[i].getAggrValue(rcb, true);
+            }
+
+            if (rcb.getTraceLevel() >= 2) {
+                rcb.trace("Input tuple added to existing group");
+            }
+
+            return false;
+        }
+
+        group = new FieldValueImpl[numCols];
+
+        for (int i = 0; i < theNumGBColumns; ++i) {
+            group[i] = key[i];
+        }
+
+        for (int i = theNumGBColumns; i < numCols; ++i) {
+            theColumnIters[i].next(rcb);
+            theColumnIters[i].reset(rcb);
+            group[i] = theColumnIters[i].getAggrValue(rcb, true);
+        }
+
+        long memory = state.theGroupsMemory + sizeOfGroup(group);
+
+        if (rcb.isServerRCB()) {
+
+            int batchSize = rcb.getBatchSize();
+            boolean full =
+                ((batchSize > 0 &&
+                  state.theGroups.size() >=
+                  batchSize - state.theNumResults) ||
+                 memory > SERVER_HASH_GB_MEMORY);
+
+            if (full && !state.theGroups.isEmpty()) {
+
+                if (rcb.getTraceLevel() >= 2) {
+                    rcb.trace("Flushing " + state.theGroups.size() +
+                              " groups");
+                }
+
+                state.thePendingGroup = group;
+                rcb.getResumeInfo().setGBTuple(group);
+                state.theGroupsToEmit = state.theGroups.values().iterator();
+                return emitHashGroup(rcb, state);
+            }
+
+        } else if (memory > rcb.getMaxMemoryConsumption()) {
+            throw new QueryException(
+                "The group-by needs more than the " +
+                rcb.getMaxMemoryConsumption() + " bytes of memory that the " +
+                "query may use at the client (see ExecuteOptions." +
+                "setMaxMemoryConsumption). Either raise that limit, or " +
+                "create an index whose first fields are the group-by " +
+                "expressions, so that the rows can be grouped in order",
+                theLocation);
+        }
+
+        addHashGroup(state, group);
+
+        if (rcb.getTraceLevel() >= 2) {
+            rcb.trace("Input tuple started group " + state.theGroups.size());
+        }
+
+        return false;
+    }
+
+    private void addHashGroup(SFWIterState state, FieldValueImpl[] group) {
+        state.theGroups.put(new GroupKey(group, theNumGBColumns), group);
+        state.theGroupsMemory += sizeOfGroup(group);
+    }
+
+    /*
+     * Moves the next group to be returned into the result regs. When there
+     * are no more, clears the hash table and starts the next one with the
+     * pending group, if any, and returns false.
+     */
+    private boolean emitHashGroup(
+        RuntimeControlBlock rcb,
+        SFWIterState state) {
+
+        if (state.theGroupsToEmit.hasNext()) {
+
+            FieldValueImpl[] group = state.theGroupsToEmit.next();
+
+            for (int i = 0; i < theColumnIters.length; ++i) {
+                rcb.setRegVal(theColumnIters[i].getResultReg(), group[i]);
+            }
+            return true;
+        }
+
+        state.theGroupsToEmit = null;
+        state.theGroups.clear();
+        state.theGroupsMemory = 0;
+
+        if (state.thePendingGroup != null) {
+            addHashGroup(state, state.thePendingGroup);
+            state.thePendingGroup = null;
+            rcb.getResumeInfo().setGBTuple(null);
+        }
+
+        return false;
+    }
+
+    /*
+     * Called when there are no more input tuples, to start returning the
+     * groups in the hash table.
+     */
+    private boolean produceHashGroups(
+        RuntimeControlBlock rcb,
+        SFWIterState state) {
+
+        /* Only some of the input is available locally so far */
+        if (!state.theInputDone) {
+            return false;
+        }
+
+        state.theGroupsToEmit = state.theGroups.values().iterator();
+
+        if (rcb.isServerRCB()) {
+            rcb.getResumeInfo().setGBTuple(null);
+        }
+
+        if (emitHashGroup(rcb, state)) {
+            return true;
+        }
+
+        state.done();
+        return false;
+    }
+
+    /*
+     * A rough estimate of the heap used by a group in the hash table. The
+     * grouping values are atomic; the aggregate values are replaced on every
+     * update, so they are counted at a fixed size.
+     */
+    private long sizeOfGroup(FieldValueImpl[] group) {
+
+        long size = 64 + 8 * group.length;
+
+        for (int i = 0; i < group.length; ++i) {
+
+            FieldValueImpl val = group[i];
+
+            if (i >= theNumGBColumns || val.isNull() || val.isJsonNull()) {
+                size += 24;
+                continue;
+            }
+
+            switch (val.getType()) {
+            case STRING:
+                size += 48 + 2 * val.getString().length();
+                break;
+            case BINARY:
+            case FIXED_BINARY:
+                size += 32 + val.getBytes().length;
+                break;
+            case NUMBER:
+                size += 64;
+                break;
+            default:
+                size += 24;
+            }
+        }
+
+        return size;
+    }
+
     @Override
     public void reset(RuntimeControlBlock rcb) {
 
@@ -940,6 +1283,18 @@ public class SFWIter extends PlanIter {
 
         state.theOffset = offset;
         state.theLimit = limit;
+
+        /*
+         * A sort under this SFW needs to produce only the results that will
+         * survive the offset-limit.
+         */
+        if (limit != Long.MAX_VALUE &&
+            theFromIters.length == 1 &&
+            theFromIters[0].getKind() == PlanIterKind.SORT &&
+            theWhereIter == null &&
+            theNumGBColumns < 0) {
+            ((SortIter)theFromIters[0]).setLimit(rcb, offset + limit);
+        }
     }
 
     @Override
@@ -982,6 +1337,9 @@ public class SFWIter extends PlanIter {
                 sb.append("Grouping by the first " + theNumGBColumns +
                           " expressions in the SELECT list");
             }
+            if (theIsHashGroupBy) {
+                sb.append(", via hashing");
+            }
             sb.append("\n\n");
         }
 
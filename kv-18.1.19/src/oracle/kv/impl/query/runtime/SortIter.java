@@ -0,0 +1,930 @@
+/*-
+ * Copyright (C) 2011, 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This file was distributed by Oracle as part of a version of Oracle NoSQL
+ * Database made available at:
+ *
+ * http://www.oracle.com/technetwork/database/database-technologies/nosqldb/downloads/index.html
+ *
+ * Please see the LICENSE file included in the top-level directory of the
+ * appropriate version of Oracle NoSQL Database for a copy of the license and
+ * additional information.
+ */
+
+package oracle.kv.impl.query.runtime;
+
+import static oracle.kv.impl.util.SerialVersion.QUERY_VERSION_7;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import oracle.kv.impl.api.table.ArrayValueImpl;
+import oracle.kv.impl.api.table.FieldDefImpl;
+import oracle.kv.impl.api.table.FieldValueImpl;
+import oracle.kv.impl.api.table.FieldValueSerialization;
+import oracle.kv.impl.api.table.MapValueImpl;
+import oracle.kv.impl.api.table.NullValueImpl;
+import oracle.kv.impl.api.table.RecordValueImpl;
+import oracle.kv.impl.api.table.TupleValue;
+import oracle.kv.impl.async.IterationHandleNotifier;
+import oracle.kv.impl.query.QueryException;
+import oracle.kv.impl.query.compiler.Expr;
+import oracle.kv.impl.query.compiler.QueryFormatter;
+import oracle.kv.impl.query.compiler.SortSpec;
+import oracle.kv.impl.util.SerialVersion;
+import oracle.kv.table.FieldValue;
+
+/**
+ * SortIter sorts the results of a ReceiveIter whose input streams are not
+ * sorted (see ExprSFW.theIsGenericSort). It is a client-side iterator: it
+ * consumes all of its input before returning its first result.
+ *
+ * The input results are kept in memory until they use more than
+ * ExecuteOptions.getMaxMemoryConsumption() bytes. The buffered results are
+ * then sorted and written as a "run" to a temporary file, and buffering
+ * starts over. Once the input is exhausted, the runs and the results still
+ * in memory are merged via a priority queue over the current result of each.
+ * Each run being merged has a read buffer of RUN_BUFFER_SIZE bytes, so no
+ * more than max(2, budget / RUN_BUFFER_SIZE) runs are merged at once. If
+ * there are more runs, the oldest ones are first merged into a new run,
+ * until few enough are left.
+ *
+ * If the SFW on top of this iterator has a limit, the SFW tells this
+ * iterator to keep only the first offset+limit results (see setLimit()).
+ * In this case the input results are kept in a bounded heap, whose root is
+ * the greatest result kept so far, so that only the top results are ever in
+ * memory. If even these results do not fit in the memory budget, sorting
+ * falls back to spilling runs, each of which is cut to the limit. Once the
+ * runs hold as many results as the limit, they are merged into one run cut
+ * to the limit. The last result of that run is then a cutoff: an input
+ * result that is not smaller than it cannot be among the top results, and
+ * is dropped. The runs are merged again each time another limit's worth of
+ * results has been spilled.
+ *
+ * theInputIter:
+ * The ReceiveIter producing the results to sort.
+ *
+ * theTypeDefinition:
+ * The type of the input results. Used to write and read the spilled runs.
+ *
+ * theSortFieldPositions:
+ * The positions, within the input records, of the values to sort by.
+ *
+ * theSortSpecs:
+ * The sort spec of each of the values to sort by.
+ *
+ * Introduced in v18.2
+ */
+public class SortIter extends PlanIter {
+
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    /*
+     * A sorted sequence of results, positioned on its current result.
+     */
+    private static abstract class SortedRun {
+
+        FieldValueImpl theCurrent;
+
+        /*
+         * Moves to the next result. Returns false if there are no more.
+         */
+        abstract boolean advance() throws IOException;
+
+        void close() {
+        }
+    }
+
+    private static class MemoryRun extends SortedRun {
+
+        private final Iterator<FieldValueImpl> theResults;
+
+        MemoryRun(ArrayList<FieldValueImpl> results) {
+            theResults = results.iterator();
+        }
+
+        @Override
+        boolean advance() {
+
+            if (!theResults.hasNext()) {
+                theCurrent = null;
+                return false;
+            }
+
+            theCurrent = theResults.next();
+            return true;
+        }
+    }
+
+    private static class FileRun extends SortedRun {
+
+        private final File theFile;
+
+        private final FieldDefImpl theDef;
+
+        private final short theSerialVersion;
+
+        private long theNumRemaining;
+
+        private DataInputStream theIn;
+
+        FileRun(File file, long numResults, FieldDefImpl def) {
+            theFile = file;
+            theNumRemaining = numResults;
+            theDef = (def.isWildcard() ? null : def);
+            theSerialVersion = SerialVersion.CURRENT;
+        }
+
+        @Override
+        boolean advance() throws IOException {
+
+            if (theNumRemaining == 0) {
+                theCurrent = null;
+                close();
+                return false;
+            }
+
+            if (theIn == null) {
+                theIn = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(theFile), RUN_BUFFER_SIZE));
+            }
+
+            theCurrent = (FieldValueImpl)
+                FieldValueSerialization.readFieldValue(theDef,
+                                                       theIn,
+                                                       theSerialVersion);
+            --theNumRemaining;
+            return true;
+        }
+
+        @Override
+        void close() {
+
+            if (theIn != null) {
+                try {
+                    theIn.close();
+                } catch (IOException ioe) {
+                    /* ignore, the file is deleted anyway */
+                }
+                theIn = null;
+            }
+
+            theFile.delete();
+        }
+    }
+
+    private static class SortIterState extends PlanIterState {
+
+        /* The max number of results to return, or -1 if no limit */
+        long theLimit = -1;
+
+        /* The results of the current run, if there is no limit */
+        ArrayList<FieldValueImpl> theResults;
+
+        /* The top results so far, if there is a limit */
+        PriorityQueue<FieldValueImpl> theTopResults;
+
+        /* The memory used by theResults or theTopResults */
+        long theMemory;
+
+        /*
+         * Once the top results have been spilled to disk, the input results
+         * that are not smaller than this one are dropped; null until then
+         */
+        FieldValueImpl theCutoff;
+
+        /* The runs spilled to disk */
+        ArrayList<FileRun> theRuns = new ArrayList<FileRun>();
+
+        /* Non-null once the input is exhausted and the runs are merged */
+        PriorityQueue<SortedRun> theMerge;
+
+        @Override
+        public void reset(PlanIter iter) {
+            super.reset(iter);
+            closeRuns();
+            theLimit = -1;
+            theResults = null;
+            theTopResults = null;
+            theCutoff = null;
+            theMemory = 0;
+            theMerge = null;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            closeRuns();
+            theResults = null;
+            theTopResults = null;
+            theCutoff = null;
+            theMerge = null;
+        }
+
+        private void closeRuns() {
+
+            for (FileRun run : theRuns) {
+                run.close();
+            }
+            theRuns.clear();
+
+            if (theMerge != null) {
+                for (SortedRun run : theMerge) {
+                    run.close();
+                }
+            }
+        }
+    }
+
+    private final PlanIter theInputIter;
+
+    private final FieldDefImpl theTypeDefinition;
+
+    private final int[] theSortFieldPositions;
+
+    private final SortSpec[] theSortSpecs;
+
+    private final Comparator<FieldValueImpl> theComparator;
+
+    private final Comparator<FieldValueImpl> theReverseComparator;
+
+    private final Comparator<SortedRun> theRunComparator;
+
+    public SortIter(
+        Expr e,
+        int resultReg,
+        PlanIter inputIter,
+        FieldDefImpl typeDef,
+        int[] sortFieldPositions,
+        SortSpec[] sortSpecs) {
+
+        super(e, resultReg);
+        theInputIter = inputIter;
+        theTypeDefinition = typeDef;
+        theSortFieldPositions = sortFieldPositions;
+        theSortSpecs = sortSpecs;
+        theComparator = createComparator();
+        theReverseComparator = Collections.reverseOrder(theComparator);
+        theRunComparator = createRunComparator();
+    }
+
+    /*
+     * For the unit tests, which have no compiled query to take the state
+     * position and location from.
+     */
+    SortIter(
+        int statePos,
+        int resultReg,
+        PlanIter inputIter,
+        FieldDefImpl typeDef,
+        int[] sortFieldPositions,
+        SortSpec[] sortSpecs) {
+
+        super(statePos, resultReg, null);
+        theInputIter = inputIter;
+        theTypeDefinition = typeDef;
+        theSortFieldPositions = sortFieldPositions;
+        theSortSpecs = sortSpecs;
+        theComparator = createComparator();
+        theReverseComparator = Collections.reverseOrder(theComparator);
+        theRunComparator = createRunComparator();
+    }
+
+    /**
+     * FastExternalizable constructor.
+     */
+    SortIter(DataInput in, short serialVersion) throws IOException {
+
+        super(in, serialVersion);
+        theTypeDefinition = (FieldDefImpl)deserializeFieldDef(in, serialVersion);
+        theSortFieldPositions = deserializeIntArray(in, serialVersion);
+        theSortSpecs = deserializeSortSpecs(in, serialVersion);
+        theInputIter = deserializeIter(in, serialVersion);
+        theComparator = createComparator();
+        theReverseComparator = Collections.reverseOrder(theComparator);
+        theRunComparator = createRunComparator();
+    }
+
+    /**
+     * FastExternalizable writer.  Must call superclass method first to
+     * write common elements.
+     */
+    @Override
+    public void writeFastExternal(DataOutput out, short serialVersion)
+            throws IOException {
+
+        if (serialVersion < QUERY_VERSION_7) {
+
+            final String QV7String =
+                SerialVersion.getKVVersion(QUERY_VERSION_7).
+                getNumericVersionString();
+
+            throw new QueryException(
+                "Cannot execute an order-by query whose order-by " +
+                "expressions do not match the first fields of an index " +
+                "at a version that is less than " +
+                QV7String + "\nserialVersion = " + serialVersion +
+                " expected version = " + QUERY_VERSION_7);
+        }
+
+        super.writeFastExternal(out, serialVersion);
+        serializeFieldDef(theTypeDefinition, out, serialVersion);
+        serializeIntArray(theSortFieldPositions, out, serialVersion);
+        serializeSortSpecs(theSortSpecs, out, serialVersion);
+        serializeIter(theInputIter, out, serialVersion);
+    }
+
+    private Comparator<FieldValueImpl> createComparator() {
+
+        return new Comparator<FieldValueImpl>() {
+
+            @Override
+            public int compare(FieldValueImpl v1, FieldValueImpl v2) {
+
+                if (!v1.isRecord()) {
+                    return compareAtomics(v1, v2, 0);
+                }
+
+                RecordValueImpl rec1 = (RecordValueImpl)v1;
+                RecordValueImpl rec2 = (RecordValueImpl)v2;
+
+                for (int i = 0; i < theSortFieldPositions.length; ++i) {
+
+                    int pos = theSortFieldPositions[i];
+                    int comp = compareAtomics(rec1.get(pos), rec2.get(pos), i);
+
+                    if (comp != 0) {
+                        return comp;
+                    }
+                }
+
+                return 0;
+            }
+        };
+    }
+
+    /*
+     * Orders the runs being merged by their current results.
+     */
+    private Comparator<SortedRun> createRunComparator() {
+
+        return new Comparator<SortedRun>() {
+
+            @Override
+            public int compare(SortedRun r1, SortedRun r2) {
+                return theComparator.compare(r1.theCurrent, r2.theCurrent);
+            }
+        };
+    }
+
+    /*
+     * ReceiveIter.compareAtomics() reverses the whole comparison for DESC,
+     * including the placement of NULLs, so for DESC the NULLs must be
+     * placed at the opposite end there, to end up where the spec says.
+     */
+    private int compareAtomics(
+        FieldValueImpl v1,
+        FieldValueImpl v2,
+        int sortPos) {
+
+        SortSpec spec = theSortSpecs[sortPos];
+
+        return ReceiveIter.compareAtomics(v1, v2,
+                                          spec.theIsDesc,
+                                          spec.theIsDesc != spec.theNullsFirst);
+    }
+
+    @Override
+    public PlanIterKind getKind() {
+        return PlanIterKind.SORT;
+    }
+
+    @Override
+    public int[] getTupleRegs() {
+        return theInputIter.getTupleRegs();
+    }
+
+    @Override
+    public void setIterationHandleNotifier(
+        IterationHandleNotifier iterHandleNotifier) {
+        theInputIter.setIterationHandleNotifier(iterHandleNotifier);
+    }
+
+    /**
+     * Called by the SFW on top of this iterator, after it has computed its
+     * offset and limit, to say that no more than the given number of results
+     * will be consumed.
+     */
+    void setLimit(RuntimeControlBlock rcb, long limit) {
+
+        SortIterState state = (SortIterState)rcb.getState(theStatePos);
+        state.theLimit = limit;
+    }
+
+    @Override
+    public void open(RuntimeControlBlock rcb) {
+        rcb.setState(theStatePos, new SortIterState());
+        theInputIter.open(rcb);
+    }
+
+    @Override
+    public void reset(RuntimeControlBlock rcb) {
+        theInputIter.reset(rcb);
+        PlanIterState state = rcb.getState(theStatePos);
+        state.reset(this);
+    }
+
+    @Override
+    public void close(RuntimeControlBlock rcb) {
+
+        PlanIterState state = rcb.getState(theStatePos);
+        if (state == null) {
+            return;
+        }
+
+        theInputIter.close(rcb);
+        state.close();
+    }
+
+    @Override
+    public boolean next(RuntimeControlBlock rcb) {
+        return nextInternal(rcb, false /* localOnly */);
+    }
+
+    @Override
+    public boolean nextLocal(RuntimeControlBlock rcb) {
+        return nextInternal(rcb, true /* localOnly */);
+    }
+
+    private boolean nextInternal(RuntimeControlBlock rcb, boolean localOnly) {
+
+        SortIterState state = (SortIterState)rcb.getState(theStatePos);
+
+        if (state.isDone()) {
+            return false;
+        }
+
+        try {
+            if (state.theMerge == null) {
+
+                if (!consumeInput(rcb, state, localOnly)) {
+                    return false;
+                }
+
+                startMerge(rcb, state);
+            }
+
+            SortedRun run = state.theMerge.poll();
+
+            if (run == null) {
+                state.done();
+                return false;
+            }
+
+            FieldValueImpl res = run.theCurrent;
+
+            if (run.advance()) {
+                state.theMerge.add(run);
+            }
+
+            setResult(rcb, res);
+            return true;
+
+        } catch (IOException ioe) {
+            throw new QueryException(
+                "Failed to access a temporary file used for sorting: " +
+                ioe.getMessage(), ioe, theLocation);
+        }
+    }
+
+    /*
+     * Adds all the input results to the current run or to the top results.
+     * Returns false if only part of the input is available locally so far.
+     */
+    private boolean consumeInput(
+        RuntimeControlBlock rcb,
+        SortIterState state,
+        boolean localOnly) throws IOException {
+
+        while (true) {
+
+            boolean more = (localOnly ?
+                            theInputIter.nextLocal(rcb) :
+                            theInputIter.next(rcb));
+
+            if (!more) {
+                return (!localOnly || theInputIter.isDone(rcb));
+            }
+
+            FieldValueImpl res = rcb.getRegVal(theInputIter.getResultReg());
+
+            /* The tuple registers are overwritten by the next input result */
+            if (res.isTuple()) {
+                res = ((TupleValue)res).toRecord();
+            }
+
+            if (state.theLimit >= 0) {
+                addTopResult(rcb, state, res);
+            } else {
+                addResult(rcb, state, res);
+            }
+        }
+    }
+
+    private void addTopResult(
+        RuntimeControlBlock rcb,
+        SortIterState state,
+        FieldValueImpl res) throws IOException {
+
+        if (state.theTopResults == null) {
+
+            if (state.theResults != null) {
+                /* The top results did not fit in memory */
+                if (state.theCutoff == null ||
+                    theComparator.compare(res, state.theCutoff) < 0) {
+                    addResult(rcb, state, res);
+                }
+                return;
+            }
+
+            state.theTopResults = new PriorityQueue<FieldValueImpl>(
+                11, theReverseComparator);
+        }
+
+        PriorityQueue<FieldValueImpl> top = state.theTopResults;
+
+        if (top.size() >= state.theLimit) {
+
+            if (top.isEmpty() ||
+                theComparator.compare(res, top.peek()) >= 0) {
+                return;
+            }
+
+            state.theMemory -= sizeOf(top.poll());
+        }
+
+        top.add(res);
+        state.theMemory += sizeOf(res);
+
+        if (state.theMemory > rcb.getMaxMemoryConsumption()) {
+
+            if (rcb.getTraceLevel() >= 1) {
+                rcb.trace("The top " + top.size() + " results use " +
+                          state.theMemory + " bytes. Spilling them to disk");
+            }
+
+            state.theResults = new ArrayList<FieldValueImpl>(top);
+            state.theTopResults = null;
+            spillRun(rcb, state);
+        }
+    }
+
+    private void addResult(
+        RuntimeControlBlock rcb,
+        SortIterState state,
+        FieldValueImpl res) throws IOException {
+
+        if (state.theResults == null) {
+            state.theResults = new ArrayList<FieldValueImpl>();
+        }
+
+        state.theResults.add(res);
+        state.theMemory += sizeOf(res);
+
+        if (state.theMemory > rcb.getMaxMemoryConsumption()) {
+            spillRun(rcb, state);
+        }
+    }
+
+    /*
+     * Sorts the results in memory and writes them to a temporary file.
+     */
+    private void spillRun(
+        RuntimeControlBlock rcb,
+        SortIterState state) throws IOException {
+
+        ArrayList<FieldValueImpl> results = state.theResults;
+        Collections.sort(results, theComparator);
+
+        long numResults = results.size();
+
+        if (state.theLimit >= 0 && state.theLimit <= numResults) {
+            numResults = state.theLimit;
+
+            if (numResults > 0) {
+                state.theCutoff = results.get((int)numResults - 1);
+            }
+        }
+
+        FileRun run = createRun(state, numResults);
+        DataOutputStream out = openRun(run);
+
+        try {
+            for (int i = 0; i < numResults; ++i) {
+                writeResult(results.get(i), out);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (rcb.getTraceLevel() >= 1) {
+            rcb.trace("Spilled sorted run " + state.theRuns.size() +
+                      " with " + numResults + " results (" +
+                      state.theMemory + " bytes in memory) to " +
+                      run.theFile);
+        }
+
+        results.clear();
+        state.theMemory = 0;
+
+        if (state.theLimit > 0) {
+            cutRuns(rcb, state);
+        }
+    }
+
+    /*
+     * Merges the runs into one run cut to the limit, if they hold as many
+     * results as the limit and there is no cutoff yet, or twice as many.
+     * The last result of the merged run becomes the cutoff.
+     */
+    private void cutRuns(
+        RuntimeControlBlock rcb,
+        SortIterState state) throws IOException {
+
+        long numSpilled = 0;
+        for (FileRun run : state.theRuns) {
+            numSpilled += run.theNumRemaining;
+        }
+
+        if (numSpilled < (state.theCutoff == null ?
+                          state.theLimit :
+                          2 * state.theLimit)) {
+            return;
+        }
+
+        int maxFanIn = getMaxFanIn(rcb);
+        FieldValueImpl last = null;
+
+        while (state.theRuns.size() > 1) {
+            last = mergeRuns(rcb, state,
+                             Math.min(maxFanIn, state.theRuns.size()));
+        }
+
+        if (last != null) {
+            state.theCutoff = last;
+        }
+    }
+
+    /*
+     * Creates the file of a new run with the given number of results. The
+     * run is added to theRuns first, so that the file is deleted if writing
+     * it fails.
+     */
+    private FileRun createRun(
+        SortIterState state,
+        long numResults) throws IOException {
+
+        File file = File.createTempFile("kvsort", ".run");
+        FileRun run = new FileRun(file, numResults, theTypeDefinition);
+        state.theRuns.add(run);
+        return run;
+    }
+
+    private static DataOutputStream openRun(FileRun run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(run.theFile), RUN_BUFFER_SIZE));
+    }
+
+    private void writeResult(
+        FieldValueImpl res,
+        DataOutputStream out) throws IOException {
+
+        FieldValueSerialization.writeFieldValue(res,
+                                                theTypeDefinition.isWildcard(),
+                                                out,
+                                                SerialVersion.CURRENT);
+    }
+
+    /*
+     * The max number of runs to merge at once: each of them has a read
+     * buffer of RUN_BUFFER_SIZE bytes.
+     */
+    private static int getMaxFanIn(RuntimeControlBlock rcb) {
+
+        long fanIn = rcb.getMaxMemoryConsumption() / RUN_BUFFER_SIZE;
+        return (int)Math.max(2, Math.min(fanIn, Integer.MAX_VALUE));
+    }
+
+    /*
+     * Merges the given number of oldest runs into a new run, which is cut to
+     * the limit, if any. Returns the last result of the new run.
+     */
+    private FieldValueImpl mergeRuns(
+        RuntimeControlBlock rcb,
+        SortIterState state,
+        int numRuns) throws IOException {
+
+        ArrayList<FileRun> runs =
+            new ArrayList<FileRun>(state.theRuns.subList(0, numRuns));
+        state.theRuns.subList(0, numRuns).clear();
+
+        try {
+            PriorityQueue<SortedRun> merge =
+                new PriorityQueue<SortedRun>(numRuns, theRunComparator);
+            long numResults = 0;
+
+            for (FileRun run : runs) {
+                numResults += run.theNumRemaining;
+                if (run.advance()) {
+                    merge.add(run);
+                }
+            }
+
+            if (state.theLimit >= 0 && state.theLimit < numResults) {
+                numResults = state.theLimit;
+            }
+
+            FileRun merged = createRun(state, numResults);
+            DataOutputStream out = openRun(merged);
+            FieldValueImpl last = null;
+
+            try {
+                for (long i = 0; i < numResults; ++i) {
+                    SortedRun run = merge.poll();
+                    last = run.theCurrent;
+                    writeResult(last, out);
+                    if (run.advance()) {
+                        merge.add(run);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+
+            if (rcb.getTraceLevel() >= 1) {
+                rcb.trace("Merged " + numRuns + " sorted runs into one with " +
+                          numResults + " results. " + state.theRuns.size() +
+                          " runs left");
+            }
+
+            return last;
+        } finally {
+            for (FileRun run : runs) {
+                run.close();
+            }
+        }
+    }
+
+    /*
+     * Called once the input is exhausted, to start merging the spilled runs
+     * and the results that are still in memory.
+     */
+    private void startMerge(
+        RuntimeControlBlock rcb,
+        SortIterState state) throws IOException {
+
+        ArrayList<FieldValueImpl> results = state.theResults;
+
+        if (state.theTopResults != null) {
+            results = new ArrayList<FieldValueImpl>(state.theTopResults);
+            state.theTopResults = null;
+        }
+
+        int maxFanIn = getMaxFanIn(rcb);
+
+        while (state.theRuns.size() > maxFanIn) {
+            mergeRuns(rcb, state,
+                      Math.min(maxFanIn, state.theRuns.size() - maxFanIn + 1));
+        }
+
+        int numRuns = state.theRuns.size() + 1;
+
+        state.theMerge = new PriorityQueue<SortedRun>(numRuns,
+                                                      theRunComparator);
+
+        for (FileRun run : state.theRuns) {
+            if (run.advance()) {
+                state.theMerge.add(run);
+            }
+        }
+        state.theRuns.clear();
+
+        if (results != null) {
+            Collections.sort(results, theComparator);
+            SortedRun run = new MemoryRun(results);
+            if (run.advance()) {
+                state.theMerge.add(run);
+            }
+        }
+
+        state.theResults = null;
+
+        if (rcb.getTraceLevel() >= 1) {
+            rcb.trace("Merging " + state.theMerge.size() + " sorted runs");
+        }
+    }
+
+    /*
+     * The EMPTY values sent by the servers for sorting purposes are returned
+     * as NULLs (see ExprSFW.theDoNullOnEmpty).
+     */
+    private void setResult(RuntimeControlBlock rcb, FieldValueImpl res) {
+
+        FieldValueImpl reg = rcb.getRegVal(theResultReg);
+
+        /* The ReceiveIter returns its results in a TupleValue */
+        if (reg != null && reg.isTuple()) {
+            ((TupleValue)reg).toTuple((RecordValueImpl)res, true);
+        } else if (res.isRecord()) {
+            ((RecordValueImpl)res).convertEmptyToNull();
+            rcb.setRegVal(theResultReg, res);
+        } else {
+            rcb.setRegVal(theResultReg,
+                          res.isEMPTY() ? NullValueImpl.getInstance() : res);
+        }
+    }
+
+    /*
+     * A rough estimate of the heap used by a result.
+     */
+    private static long sizeOf(FieldValueImpl val) {
+
+        if (val.isNull() || val.isJsonNull() || val.isEMPTY()) {
+            return 16;
+        }
+
+        long size;
+
+        switch (val.getType()) {
+        case RECORD: {
+            RecordValueImpl rec = (RecordValueImpl)val;
+            size = 48 + 8 * rec.getNumFields();
+            for (int i = 0; i < rec.getNumFields(); ++i) {
+                size += sizeOf(rec.get(i));
+            }
+            return size;
+        }
+        case ARRAY: {
+            ArrayValueImpl arr = (ArrayValueImpl)val;
+            size = 48 + 8 * arr.size();
+            for (int i = 0; i < arr.size(); ++i) {
+                size += sizeOf(arr.get(i));
+            }
+            return size;
+        }
+        case MAP: {
+            MapValueImpl map = (MapValueImpl)val;
+            size = 64;
+            for (Map.Entry<String, FieldValue> entry :
+                     map.getMap().entrySet()) {
+                size += 80 + 2 * entry.getKey().length() +
+                        sizeOf((FieldValueImpl)entry.getValue());
+            }
+            return size;
+        }
+        case STRING:
+            return 48 + 2 * val.getString().length();
+        case BINARY:
+        case FIXED_BINARY:
+            return 32 + val.getBytes().length;
+        case NUMBER:
+        case TIMESTAMP:
+            return 64;
+        default:
+            return 24;
+        }
+    }
+
+    @Override
+    protected void displayContent(StringBuilder sb, QueryFormatter formatter) {
+
+        formatter.indent(sb);
+        sb.append("Sort Field Positions : ");
+        for (int i = 0; i < theSortFieldPositions.length; ++i) {
+            sb.append(theSortFieldPositions[i]);
+            if (theSortSpecs[i].theIsDesc) {
+                sb.append(" DESC");
+            }
+            if (i < theSortFieldPositions.length - 1) {
+                sb.append(", ");
+            }
+        }
+        sb.append(",\n");
+
+        theInputIter.display(sb, formatter);
+    }
+}
@@ -452,14 +452,16 @@ class TableScannerFactory {
                 if (!theTable.initRowFromByteValue(theTableRow,
                                                    data,
                                                    format,
-                                                   1/*offset*/)) {
+                                                   1/*offset*/,
+                                                   true/*lazy*/)) {
 
                     return null;
                 }
             } else {
                 theTableRow = theTable.createRow();
 
-                if (!theTable.initRowFromBytes(thePrimKey,data, theTableRow)) {
+                if (!theTable.initRowFromBytes(thePrimKey, data, theTableRow,
+                                               true/*lazy*/)) {
                     return null;
                 }
             }
@@ -811,7 +813,8 @@ class TableScannerFactory {
             if (theTable.initRowFromByteValue(theTableRow,
                                               data,
                                               format,
-                                              1/*offset*/)) {
+                                              1/*offset*/,
+                                              true/*lazy*/)) {
                 theTableRow.setExpirationTime(theScanner.getExpirationTime());
                 theTableRow.setVersion(rowVersion());
                 return theTableRow;
@@ -1212,7 +1215,8 @@ class TableScannerFactory {
 
             if (!theTable.initRowFromBytes(theBinaryPrimKey,
                                            data,
-                                           theTableRow)) {
+                                           theTableRow,
+                                           true/*lazy*/)) {
                 return null;
             }
 
@@ -1341,7 +1345,8 @@ class TableScannerFactory {
 
             Value.Format format = Value.Format.fromFirstByte(data[0]);
 
-            if (theTable.initRowFromByteValue(theRow, data, format, 1)) {
+            if (theTable.initRowFromByteValue(theRow, data, format, 1,
+                                              true/*lazy*/)) {
                 theRow.setExpirationTime(theScanner.getExpirationTime());
                 theRow.setVersion(rowVersion());
                 return theRow;
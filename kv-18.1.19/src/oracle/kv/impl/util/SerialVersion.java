@@ -293,12 +293,31 @@ public class SerialVersion {
     /* Add maxWriteKB and resumeKey to MultiDeleteTable operation */
     public static final short MULTIDELTBL_WRITEKB_RESUMEKEY = V16;
 
+    /*
+     * Introduced at R18.2/V17
+     * - SFWIter.theIsHashGroupBy field, for group-by without a sorting index
+     */
+    public static final short V17 = 17;
+    static { init(V17, KVVersion.R18_2); }
+
+    public static final short QUERY_VERSION_7 = V17;
+
     /*
      * When adding a new version and updating DEFAULT_CURRENT, be sure to make
      * corresponding changes in KVVersion as well as the files referenced from
      * there to add a new release version.
      */
-    private static final short DEFAULT_CURRENT = V16;
+    private static final short DEFAULT_CURRENT = V17;
+
+    /*
+     * Check that the current KVVersion is at least the one that introduced
+     * the default current serial version, so that the software does not
+     * report an older release than the protocol it speaks.
+     */
+    static {
+        assert KVVersion.CURRENT_VERSION.compareTo(
+            getKVVersion(DEFAULT_CURRENT)) >= 0;
+    }
 
     /**
      * The current serial version, with a system property override for use in
@@ -40,6 +40,9 @@ import oracle.kv.table.TableIteratorOptions;
  */
 public class ExecuteOptions {
 
+    private static final long DEFAULT_MAX_MEMORY_CONSUMPTION =
+        1024L * 1024L * 1024L;
+
     private Consistency consistency;
 
     private Durability durability;
@@ -76,6 +79,9 @@ public class ExecuteOptions {
 
     private boolean doPrefetching = true;
 
+    /* added in 18.2 */
+    private long maxMemoryConsumption = DEFAULT_MAX_MEMORY_CONSUMPTION;
+
     public ExecuteOptions() {}
 
     /**
@@ -403,6 +409,40 @@ public class ExecuteOptions {
         return logContext;
     }
 
+    /**
+     * Sets the maximum number of bytes that a query may use at the client
+     * for operations that must hold intermediate results in memory, such as
+     * grouping the table rows when there is no index that orders them by the
+     * group-by expressions. A query that needs more than this fails with an
+     * exception. The default is 1GB.
+     * <p>
+     * Sorting the rows when there is no index that orders them by the
+     * order-by expressions does not fail: once the rows to sort use this
+     * many bytes, they are written as a sorted run to a temporary file in
+     * the directory named by the java.io.tmpdir system property, and the
+     * runs are merged at the end.
+     *
+     * @since 18.2
+     */
+    public ExecuteOptions setMaxMemoryConsumption(long maxMemoryConsumption) {
+        if (maxMemoryConsumption <= 0) {
+            throw new IllegalArgumentException("The max memory consumption " +
+                "must be a positive value: " + maxMemoryConsumption);
+        }
+        this.maxMemoryConsumption = maxMemoryConsumption;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of bytes that a query may use at the client
+     * to hold intermediate results.
+     *
+     * @since 18.2
+     */
+    public long getMaxMemoryConsumption() {
+        return maxMemoryConsumption;
+    }
+
     /**
      * For internal use only.
      * @hidden
@@ -0,0 +1,449 @@
+/*-
+ * Copyright (C) 2011, 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This file was distributed by Oracle as part of a version of Oracle NoSQL
+ * Database made available at:
+ *
+ * http://www.oracle.com/technetwork/database/database-technologies/nosqldb/downloads/index.html
+ *
+ * Please see the LICENSE file included in the top-level directory of the
+ * appropriate version of Oracle NoSQL Database for a copy of the license and
+ * additional information.
+ */
+
+package oracle.kv.impl.api.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import oracle.kv.table.ArrayValue;
+import oracle.kv.table.MapValue;
+import oracle.kv.table.RecordValue;
+
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.junit.Test;
+
+/**
+ * Checks that a row whose fields are deserialized lazily (see LazyRowValue)
+ * equals the same row deserialized eagerly, however its fields are accessed:
+ * one at a time by name or position in random order, all at once through
+ * RecordValueImpl.decodeFields(), after puts and removes, or from several
+ * threads at once.
+ *
+ * The table has a field of every type, most of them nullable, so that they
+ * are written as Avro unions, and nested records, arrays and maps.
+ */
+public class LazyRowValueTest {
+
+    private static final int ROWS = 500;
+
+    private static final TableImpl TABLE = (TableImpl)
+        TableBuilder.createTableBuilder("lazy")
+        .addInteger("id")
+        .addString("s")
+        .addInteger("notNull", null, false, 7)
+        .addLong("l")
+        .addDouble("d")
+        .addFloat("f")
+        .addBoolean("b")
+        .addBinary("bin", null)
+        .addFixedBinary("fix", 3, null)
+        .addEnum("e", new String[] { "A", "B", "C" }, null, null, null)
+        .addTimestamp("ts", 3)
+        .addNumber("n")
+        .addJson("j", null)
+        .addField("arr", TableBuilder.createArrayBuilder()
+                  .addString().build())
+        .addField("m", TableBuilder.createMapBuilder()
+                  .addInteger().build())
+        .addField("rec", TableBuilder.createRecordBuilder("rec")
+                  .addString("x")
+                  .addField("inner", TableBuilder.createRecordBuilder("inner")
+                            .addDouble("z")
+                            .addField("zs", TableBuilder.createArrayBuilder()
+                                      .addLong().build())
+                            .build())
+                  .build())
+        .addField("arrOfRec", TableBuilder.createArrayBuilder()
+                  .addField(TableBuilder.createRecordBuilder("elem")
+                            .addString("k")
+                            .addInteger("v")
+                            .build())
+                  .build())
+        .addField("mapOfArr", TableBuilder.createMapBuilder()
+                  .addField(TableBuilder.createArrayBuilder()
+                            .addInteger().build())
+                  .build())
+        .addString("last")
+        .primaryKey("id")
+        .buildTable();
+
+    /*
+     * A row and its serialized key and value.
+     */
+    private static class Encoded {
+        final RowImpl row;
+        final byte[] key;
+        final byte[] value;
+
+        Encoded(RowImpl row, byte[] key, byte[] value) {
+            this.row = row;
+            this.key = key;
+            this.value = value;
+        }
+
+        RowImpl eager() {
+            return TABLE.createRowFromBytes(key, value, false);
+        }
+
+        RowImpl lazy() {
+            RowImpl lazy = TABLE.createRow();
+            assertTrue(TABLE.initRowFromBytes(key, value, lazy, true));
+            return lazy;
+        }
+    }
+
+    @Test
+    public void testRandomAccessOrder() {
+
+        Random random = new Random(1);
+        List<String> names = new ArrayList<String>(TABLE.getFields());
+
+        for (Encoded encoded : rows(random)) {
+            RowImpl eager = encoded.eager();
+            assertEquals(encoded.row, eager);
+
+            /* By name */
+            RowImpl lazy = encoded.lazy();
+            Collections.shuffle(names, random);
+            for (String name : names) {
+                assertEquals(name, eager.get(name), lazy.get(name));
+            }
+            checkEquals(eager, lazy);
+
+            /* By position, only some of the fields */
+            lazy = encoded.lazy();
+            for (int i = 0; i < 5; ++i) {
+                int pos = random.nextInt(eager.getNumFields());
+                assertEquals(eager.get(pos), lazy.get(pos));
+            }
+            checkEquals(eager, lazy);
+        }
+    }
+
+    @Test
+    public void testDecodeFields() {
+
+        Random random = new Random(2);
+
+        for (Encoded encoded : rows(random)) {
+            RowImpl eager = encoded.eager();
+
+            /* Nothing accessed yet */
+            RowImpl lazy = encoded.lazy();
+            lazy.decodeFields();
+            checkEquals(eager, lazy);
+
+            /* The fields accessed so far are skipped */
+            lazy = encoded.lazy();
+            lazy.get("rec");
+            lazy.get(random.nextInt(eager.getNumFields()));
+            lazy.decodeFields();
+            checkEquals(eager, lazy);
+
+            /* Through the methods that need every field */
+            lazy = encoded.lazy();
+            lazy.get("m");
+            assertEquals(eager.toString(), lazy.toString());
+            lazy = encoded.lazy();
+            assertEquals(TABLE.createValue(eager), TABLE.createValue(lazy));
+            lazy = encoded.lazy();
+            RowImpl clone = lazy.clone();
+            assertEquals(eager.hashCode(), clone.hashCode());
+            checkEquals(eager, clone);
+        }
+    }
+
+    @Test
+    public void testPutAndRemoveBeforeAccess() {
+
+        Random random = new Random(3);
+        List<String> names = new ArrayList<String>(TABLE.getFields());
+        names.remove("id");
+
+        for (Encoded encoded : rows(random)) {
+            RowImpl eager = encoded.eager();
+            RowImpl lazy = encoded.lazy();
+
+            for (int i = 0; i < 4; ++i) {
+                String name = names.get(random.nextInt(names.size()));
+                switch (random.nextInt(3)) {
+                case 0:
+                    eager.remove(name);
+                    lazy.remove(name);
+                    break;
+                case 1:
+                    if (!name.equals("notNull")) {
+                        eager.putNull(name);
+                        lazy.putNull(name);
+                    }
+                    break;
+                default:
+                    eager.put("s", "changed " + i);
+                    lazy.put("s", "changed " + i);
+                    eager.put("last", "changed " + i);
+                    lazy.put("last", "changed " + i);
+                }
+            }
+
+            Collections.shuffle(names, random);
+            for (String name : names) {
+                assertEquals(name, eager.get(name), lazy.get(name));
+            }
+            assertEquals(eager.size(), lazy.size());
+            checkEquals(eager, lazy);
+        }
+
+        /* A removed field stays removed once the others are deserialized */
+        Encoded encoded = rows(random).get(0);
+        RowImpl lazy = encoded.lazy();
+        lazy.remove("l");
+        lazy.decodeFields();
+        assertNull(lazy.get("l"));
+        assertEquals(encoded.eager().size() - 1, lazy.size());
+
+        RowImpl cleared = encoded.lazy();
+        cleared.clear();
+        assertEquals(0, cleared.size());
+        assertNull(cleared.get("s"));
+    }
+
+    /*
+     * TableImpl writes each array and map as one block with a positive item
+     * count. Other Avro writers may write blocks with a negative count,
+     * followed by the size of the block in bytes, which is skipped without
+     * reading the items.
+     */
+    @Test
+    public void testNegativeBlockCounts() throws Exception {
+
+        Random random = new Random(4);
+        List<String> names = new ArrayList<String>(TABLE.getFields());
+        int numBlocked = 0;
+
+        for (Encoded encoded : rows(random)) {
+            byte[] blocked = reencodeWithBlocks(encoded.value);
+            if (blocked.length > encoded.value.length) {
+                /* The block sizes were added */
+                ++numBlocked;
+            }
+            Encoded reencoded = new Encoded(encoded.row, encoded.key, blocked);
+
+            RowImpl eager = reencoded.eager();
+            assertEquals(encoded.row, eager);
+
+            RowImpl lazy = reencoded.lazy();
+            Collections.shuffle(names, random);
+            for (String name : names) {
+                assertEquals(name, eager.get(name), lazy.get(name));
+            }
+            checkEquals(eager, lazy);
+        }
+
+        assertTrue(numBlocked > ROWS / 2);
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+
+        final int numThreads = 8;
+        final List<Encoded> encoded = rows(new Random(5));
+        final RowImpl[] eager = new RowImpl[encoded.size()];
+        final RowImpl[] lazy = new RowImpl[encoded.size()];
+
+        for (int i = 0; i < encoded.size(); ++i) {
+            eager[i] = encoded.get(i).eager();
+            lazy[i] = encoded.get(i).lazy();
+        }
+
+        final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        try {
+            for (int t = 0; t < numThreads; ++t) {
+                final Random random = new Random(100 + t);
+
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+
+                        List<String> names =
+                            new ArrayList<String>(TABLE.getFields());
+
+                        for (int i = 0; i < lazy.length; ++i) {
+                            /* All threads start on each row together */
+                            if (i % 50 == 0) {
+                                barrier.await();
+                            }
+                            Collections.shuffle(names, random);
+                            for (String name : names) {
+                                assertEquals(name, eager[i].get(name),
+                                             lazy[i].get(name));
+                            }
+                            if (random.nextInt(10) == 0) {
+                                lazy[i].decodeFields();
+                            }
+                            assertEquals(eager[i].size(), lazy[i].size());
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < lazy.length; ++i) {
+            checkEquals(eager[i], lazy[i]);
+        }
+    }
+
+    private static void checkEquals(RowImpl eager, RowImpl lazy) {
+        assertEquals(eager, lazy);
+        assertEquals(lazy, eager);
+        assertEquals(0, lazy.compareTo(eager));
+    }
+
+    private static List<Encoded> rows(Random random) {
+
+        List<Encoded> rows = new ArrayList<Encoded>();
+
+        for (int id = 0; id < ROWS; ++id) {
+            RowImpl row = TABLE.createRow();
+            row.put("id", id);
+
+            if (random.nextInt(4) > 0) {
+                row.put("s", "string " + random.nextInt(1000));
+            } else {
+                row.putNull("s");
+            }
+            row.put("notNull", random.nextInt());
+            row.put("l", random.nextLong());
+            row.put("d", random.nextDouble());
+            row.put("f", random.nextFloat());
+            row.put("b", random.nextBoolean());
+
+            byte[] bytes = new byte[random.nextInt(300)];
+            random.nextBytes(bytes);
+            row.put("bin", bytes);
+            row.putFixed("fix", new byte[] { 1, (byte)id, 3 });
+            row.putEnum("e", new String[] { "A", "B", "C" }[id % 3]);
+            row.put("ts", new Timestamp(random.nextInt(1000000000)));
+            row.putNumber("n", new BigDecimal(random.nextInt() + ".25"));
+
+            if (random.nextInt(4) > 0) {
+                row.putJson("j", "{\"a\":[1,2,{\"b\":\"c\"}],\"n\":" +
+                            random.nextInt() + "}");
+            } else {
+                row.putNull("j");
+            }
+
+            ArrayValue arr = row.putArray("arr");
+            for (int i = random.nextInt(100); i > 0; --i) {
+                arr.add("elem " + i);
+            }
+
+            MapValue map = row.putMap("m");
+            for (int i = random.nextInt(100); i > 0; --i) {
+                map.put("k" + i, i);
+            }
+
+            if (random.nextInt(4) > 0) {
+                RecordValue rec = row.putRecord("rec");
+                rec.put("x", "x" + id);
+                RecordValue inner = rec.putRecord("inner");
+                inner.put("z", random.nextDouble());
+                ArrayValue zs = inner.putArray("zs");
+                for (int i = random.nextInt(20); i > 0; --i) {
+                    zs.add(random.nextLong());
+                }
+            } else {
+                row.putNull("rec");
+            }
+
+            ArrayValue recs = row.putArray("arrOfRec");
+            for (int i = random.nextInt(10); i > 0; --i) {
+                RecordValue elem = recs.addRecord();
+                elem.put("k", "k" + i);
+                elem.put("v", i);
+            }
+
+            MapValue arrays = row.putMap("mapOfArr");
+            for (int i = random.nextInt(10); i > 0; --i) {
+                ArrayValue ints = arrays.putArray("a" + i);
+                for (int j = 0; j < i; ++j) {
+                    ints.add(j);
+                }
+            }
+
+            row.put("last", "the end " + id);
+
+            rows.add(new Encoded(row,
+                                 TABLE.createKey(row, false).toByteArray(),
+                                 TABLE.createValue(row).toByteArray()));
+        }
+        return rows;
+    }
+
+    /*
+     * Writes the Avro record of a serialized value again with
+     * BlockingBinaryEncoder, which writes arrays and maps as blocks with
+     * negative counts.
+     */
+    private static byte[] reencodeWithBlocks(byte[] value) throws Exception {
+
+        /* The format and the table version */
+        final int header = 2;
+
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(
+            value, header, value.length - header, null);
+        GenericData.Record record = (GenericData.Record)
+            new GenericDatumReader<Object>(TABLE.getSchema()).read(null,
+                                                                   decoder);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(value, 0, header);
+        BinaryEncoder encoder = new EncoderFactory().configureBlockSize(64).
+            blockingBinaryEncoder(out, null);
+        new GenericDatumWriter<Object>(TABLE.getSchema()).write(record,
+                                                                encoder);
+        encoder.flush();
+
+        return out.toByteArray();
+    }
+}
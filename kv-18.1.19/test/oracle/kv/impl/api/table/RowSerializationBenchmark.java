@@ -0,0 +1,192 @@
+/*-
+ * Copyright (C) 2011, 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This file was distributed by Oracle as part of a version of Oracle NoSQL
+ * Database made available at:
+ *
+ * http://www.oracle.com/technetwork/database/database-technologies/nosqldb/downloads/index.html
+ *
+ * Please see the LICENSE file included in the top-level directory of the
+ * appropriate version of Oracle NoSQL Database for a copy of the license and
+ * additional information.
+ */
+
+package oracle.kv.impl.api.table;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import oracle.kv.Key;
+import oracle.kv.Value;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Row encoding, decoding and by-name field access for wide tables.
+ *
+ * {@code decodeRow} is the work done for every row a table iterator or a
+ * query returns; {@code encodeKey} and {@code encodeValue} are done for every
+ * put. {@code getByName} reads every field of a row by name, through the
+ * name to position lookup cached on the record definition;
+ * {@code getByNameTreeMap} is the previous lookup, a TreeMap ordered by
+ * FieldComparator.
+ *
+ * The project methods decode a row and read two of its columns, as a scan
+ * with a narrow select list does: {@code projectEager} deserializes every
+ * field up front, {@code projectLazy} deserializes only the fields read.
+ * {@code decodeRowLazy} reads every field of a lazy row, the worst case for
+ * it. Run with {@code -prof gc} and compare gc.alloc.rate.norm for bytes
+ * allocated per call:
+ *
+ *   java -cp <test classpath> org.openjdk.jmh.Main RowSerializationBenchmark -prof gc
+ *
+ * The by-name lookup, in ns per call (the inverse of the throughput
+ * reported), from a plain timing loop over these methods rather than JMH;
+ * the ranges are over several runs. "Before" is the TreeMap lookup alone,
+ * "after" the HashMap of exact names tried first:
+ *
+ * <pre>
+ *   method            columns   before            after
+ *   getByName              10   780 - 880         387 - 445
+ *                          50   3650 - 4430       750 - 918
+ *                         200   17600 - 24400     3790 - 4820
+ *   decodeRow              10   2100 - 2900       3300 - 3500
+ *                          50   15990 - 19570     4455 - 4640
+ *                         200   78800 - 97900     19500 - 31500
+ *   getByNameTreeMap       10   720 - 1110
+ *                          50   3380 - 4470
+ *                         200   19400 - 28100
+ * </pre>
+ *
+ * decodeRow at 10 columns is the one case that got slower; the loop cannot
+ * tell that from warm-up noise, and a JMH run should settle it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RowSerializationBenchmark {
+
+    @Param({"10", "50", "200"})
+    public int nColumns;
+
+    private TableImpl table;
+    private RowImpl row;
+    private String[] names;
+    private Map<String, Integer> treePositions;
+    private byte[] keyBytes;
+    private byte[] valueBytes;
+
+    @Setup
+    public void setUp() {
+
+        /* An id, then alternating integer, string and double columns. */
+        TableBuilder builder = TableBuilder.createTableBuilder("wide");
+        builder.addString("id");
+        names = new String[nColumns];
+        for (int i = 0; i < nColumns; i++) {
+            names[i] = "column" + i;
+            switch (i % 3) {
+            case 0:
+                builder.addInteger(names[i]);
+                break;
+            case 1:
+                builder.addString(names[i]);
+                break;
+            default:
+                builder.addDouble(names[i]);
+            }
+        }
+        builder.primaryKey("id");
+        table = builder.buildTable();
+
+        row = table.createRow();
+        row.put("id", "player1@oracle.com");
+        for (int i = 0; i < nColumns; i++) {
+            switch (i % 3) {
+            case 0:
+                row.put(names[i], i);
+                break;
+            case 1:
+                row.put(names[i], "value of " + names[i]);
+                break;
+            default:
+                row.put(names[i], i * 1.5);
+            }
+        }
+
+        treePositions =
+            new TreeMap<String, Integer>(FieldComparator.instance);
+        for (String name : row.getFieldNames()) {
+            treePositions.put(name, row.getFieldPos(name));
+        }
+
+        keyBytes = table.createKey(row, false).toByteArray();
+        valueBytes = table.createValue(row).toByteArray();
+    }
+
+    @Benchmark
+    public RowImpl decodeRow() {
+        return table.createRowFromBytes(keyBytes, valueBytes, false);
+    }
+
+    @Benchmark
+    public int decodeRowLazy() {
+        RowImpl lazy = table.createRow();
+        table.initRowFromBytes(keyBytes, valueBytes, lazy, true);
+        return lazy.size();
+    }
+
+    @Benchmark
+    public void projectEager(Blackhole bh) {
+        RowImpl decoded = table.createRowFromBytes(keyBytes, valueBytes, false);
+        bh.consume(decoded.get(names[1]));
+        bh.consume(decoded.get(names[nColumns / 2]));
+    }
+
+    @Benchmark
+    public void projectLazy(Blackhole bh) {
+        RowImpl lazy = table.createRow();
+        table.initRowFromBytes(keyBytes, valueBytes, lazy, true);
+        bh.consume(lazy.get(names[1]));
+        bh.consume(lazy.get(names[nColumns / 2]));
+    }
+
+    @Benchmark
+    public Key encodeKey() {
+        return table.createKey(row, false);
+    }
+
+    @Benchmark
+    public Value encodeValue() {
+        return table.createValue(row);
+    }
+
+    @Benchmark
+    public void getByName(Blackhole bh) {
+        for (String name : names) {
+            bh.consume(row.get(name));
+        }
+    }
+
+    @Benchmark
+    public void getByNameTreeMap(Blackhole bh) {
+        for (String name : names) {
+            bh.consume(row.get(treePositions.get(name).intValue()));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*-
+ * Copyright (C) 2011, 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This file was distributed by Oracle as part of a version of Oracle NoSQL
+ * Database made available at:
+ *
+ * http://www.oracle.com/technetwork/database/database-technologies/nosqldb/downloads/index.html
+ *
+ * Please see the LICENSE file included in the top-level directory of the
+ * appropriate version of Oracle NoSQL Database for a copy of the license and
+ * additional information.
+ */
+
+package oracle.kv.impl.map;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import oracle.kv.Key;
+import oracle.kv.impl.topo.PartitionId;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Key to partition mapping, as done for every request the client dispatches.
+ *
+ * {@code bigInteger} is the previous implementation (digest into a new
+ * array, BigInteger mod, new PartitionId); {@code partitionMap} is
+ * HashKeyToPartitionMap as it is now. Run with {@code -prof gc} and compare
+ * gc.alloc.rate.norm for bytes allocated per call:
+ *
+ *   java -cp <test classpath> org.openjdk.jmh.Main HashKeyToPartitionMapBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashKeyToPartitionMapBenchmark {
+
+    private static final int KEYS = 1024;
+
+    @Param({"100", "1000", "10000"})
+    public int nPartitions;
+
+    private HashKeyToPartitionMap map;
+    private BigInteger bigPartitions;
+    private final HashKeyToPartitionMap.DigestCache digests =
+        new HashKeyToPartitionMap.DigestCache();
+    private byte[][] keys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        map = new HashKeyToPartitionMap(nPartitions);
+        bigPartitions = BigInteger.valueOf(nPartitions);
+
+        /* Shaped like table keys: a short major path and a minor part. */
+        keys = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = Key.fromString("/ladders/main/player" + i +
+                                     "@oracle.com/-/matches").toByteArray();
+        }
+    }
+
+    @Benchmark
+    public PartitionId partitionMap() {
+        return map.getPartitionId(nextKey());
+    }
+
+    @Benchmark
+    public PartitionId bigInteger() {
+        final byte[] keyBytes = nextKey();
+        final MessageDigest md = digests.get().md;
+        md.update(keyBytes, 0, Key.getMajorPathLength(keyBytes));
+
+        final BigInteger index = new BigInteger(md.digest()).mod(bigPartitions);
+        return new PartitionId(index.intValue() + 1);
+    }
+
+    private byte[] nextKey() {
+        next = (next + 1) & (KEYS - 1);
+        return keys[next];
+    }
+}
@@ -0,0 +1,157 @@
+/*-
+ * Copyright (C) 2011, 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This file was distributed by Oracle as part of a version of Oracle NoSQL
+ * Database made available at:
+ *
+ * http://www.oracle.com/technetwork/database/database-technologies/nosqldb/downloads/index.html
+ *
+ * Please see the LICENSE file included in the top-level directory of the
+ * appropriate version of Oracle NoSQL Database for a copy of the license and
+ * additional information.
+ */
+
+package oracle.kv.impl.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import oracle.kv.Key;
+
+import org.junit.Test;
+
+/**
+ * Checks that HashKeyToPartitionMap maps keys to the same partitions as the
+ * previous implementation, {@code new BigInteger(digest).mod(n) + 1}.
+ *
+ * Partition counts go up to 2^20. Larger counts are not covered because a
+ * map allocates one PartitionId per partition.
+ */
+public class HashKeyToPartitionMapTest {
+
+    private static final int[] PARTITION_COUNTS = {
+        1, 2, 3, 7, 10, 100, 255, 256, 1000, 1009, 10000, 65536, 65537,
+        1 << 20
+    };
+
+    private static final int RANDOM_DIGESTS = 200000;
+
+    @Test
+    public void testIndexMatchesBigIntegerMod() {
+
+        final Random random = new Random(42);
+        final byte[] digest = new byte[16];
+
+        for (int n : PARTITION_COUNTS) {
+            final HashKeyToPartitionMap.Partitions partitions =
+                new HashKeyToPartitionMap.Partitions(n);
+
+            for (byte[] edge : edgeDigests()) {
+                checkIndex(partitions, edge);
+            }
+            for (int i = 0; i < RANDOM_DIGESTS; i++) {
+                random.nextBytes(digest);
+                checkIndex(partitions, digest);
+            }
+        }
+    }
+
+    @Test
+    public void testPartitionIdMatchesBigIntegerMod() throws Exception {
+
+        final MessageDigest md = MessageDigest.getInstance("MD5");
+
+        for (int n : PARTITION_COUNTS) {
+            final HashKeyToPartitionMap map = new HashKeyToPartitionMap(n);
+            final BigInteger bigN = BigInteger.valueOf(n);
+
+            for (int i = 0; i < 10000; i++) {
+                final byte[] keyBytes =
+                    Key.createKey(Arrays.asList("user" + i, "shard"),
+                                  "minor" + i).toByteArray();
+                md.reset();
+                md.update(keyBytes, 0, Key.getMajorPathLength(keyBytes));
+                final int expected =
+                    new BigInteger(md.digest()).mod(bigN).intValue() + 1;
+
+                assertEquals(expected,
+                             map.getPartitionId(keyBytes).getPartitionId());
+            }
+        }
+    }
+
+    @Test
+    public void testSharedPartitionIds() {
+        final HashKeyToPartitionMap map = new HashKeyToPartitionMap(100);
+        final byte[] keyBytes = Key.createKey("user1").toByteArray();
+        assertSame(map.getPartitionId(keyBytes),
+                   map.getPartitionId(keyBytes));
+    }
+
+    @Test
+    public void testDeserializedMap() throws Exception {
+
+        final HashKeyToPartitionMap map = new HashKeyToPartitionMap(1000);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(map);
+        out.close();
+        final HashKeyToPartitionMap copy = (HashKeyToPartitionMap)
+            new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray())).readObject();
+
+        assertEquals(1000, copy.getNPartitions());
+        for (int i = 0; i < 1000; i++) {
+            final byte[] keyBytes = Key.createKey("user" + i).toByteArray();
+            assertEquals(map.getPartitionId(keyBytes),
+                         copy.getPartitionId(keyBytes));
+        }
+    }
+
+    @Test
+    public void testNonPositivePartitionCount() {
+        for (int n : new int[] { 0, -1 }) {
+            try {
+                new HashKeyToPartitionMap(n).getPartitionId(
+                    Key.createKey("user1").toByteArray());
+                fail("Expected ArithmeticException for " + n + " partitions");
+            } catch (ArithmeticException expected) {
+            }
+        }
+    }
+
+    /*
+     * All zeros, all ones, only the sign bit, and the largest positive
+     * digest.
+     */
+    private static byte[][] edgeDigests() {
+        final byte[] zeros = new byte[16];
+        final byte[] ones = new byte[16];
+        Arrays.fill(ones, (byte) 0xff);
+        final byte[] signBit = new byte[16];
+        signBit[0] = (byte) 0x80;
+        final byte[] maxPositive = ones.clone();
+        maxPositive[0] = 0x7f;
+        return new byte[][] { zeros, ones, signBit, maxPositive };
+    }
+
+    private static void checkIndex(HashKeyToPartitionMap.Partitions partitions,
+                                   byte[] digest) {
+        final int expected = new BigInteger(digest).mod(
+            BigInteger.valueOf(partitions.n)).intValue();
+        assertEquals("digest " + new BigInteger(digest) + " mod " +
+                     partitions.n,
+                     expected, partitions.index(digest));
+    }
+}
@@ -0,0 +1,337 @@
+/*-
+ * Copyright (C) 2011, 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This file was distributed by Oracle as part of a version of Oracle NoSQL
+ * Database made available at:
+ *
+ * http://www.oracle.com/technetwork/database/database-technologies/nosqldb/downloads/index.html
+ *
+ * Please see the LICENSE file included in the top-level directory of the
+ * appropriate version of Oracle NoSQL Database for a copy of the license and
+ * additional information.
+ */
+
+package oracle.kv.impl.query.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import oracle.kv.KVStore;
+import oracle.kv.KVStoreConfig;
+import oracle.kv.KVStoreFactory;
+import oracle.kv.StatementResult;
+import oracle.kv.impl.util.FileUtils;
+import oracle.kv.query.ExecuteOptions;
+import oracle.kv.table.FieldValue;
+import oracle.kv.table.RecordValue;
+import oracle.kv.table.Row;
+import oracle.kv.table.Table;
+import oracle.kv.table.TableAPI;
+import oracle.kv.util.kvlite.KVLite;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs group-by queries that SFWIter evaluates by hashing, against a KVLite
+ * store started in this JVM.
+ *
+ * Table t has the same string in a and ia, and an index on ia only. A group
+ * by ia is therefore evaluated in index order, and a group by a via hashing;
+ * both must return the same groups, which must also match the groups
+ * computed here from the rows that were put.
+ *
+ * Small result batch sizes make each RN flush its hash table whenever it
+ * holds a batch worth of groups. The group that did not fit is sent back as
+ * the resume GB tuple (ResumeInfo.setGBTuple()) and starts the next batch,
+ * so a group arrives at the client split across batches, and the client
+ * SFW must regroup the partial groups.
+ */
+public class HashGroupByTest {
+
+    private static final int PORT = 13230;
+
+    private static final int ROWS = 6000;
+
+    private static final int SHARD_KEYS = 40;
+
+    private static final String STAR =
+        "count(*) AS cnt, sum(b) AS s, min(b) AS mn, max(b) AS mx";
+
+    private static File root;
+    private static KVLite kvlite;
+    private static KVStore store;
+
+    /* count, sum, min and max of b per value of a, over all rows */
+    private static final Map<String, List<Long>> expected =
+        new HashMap<String, List<Long>>();
+
+    /* The same over the rows with sk = 1 */
+    private static final Map<String, List<Long>> expectedSk1 =
+        new HashMap<String, List<Long>>();
+
+    /* The same per value of c and a */
+    private static final Map<String, List<Long>> expectedPairs =
+        new HashMap<String, List<Long>>();
+
+    @BeforeClass
+    public static void startStore() throws Exception {
+
+        root = Files.createTempDirectory("kvlite").toFile();
+        kvlite = new KVLite(root.getPath(), "kvstore", PORT, true,
+                            "localhost", null, null, 10, null,
+                            true /* useThreads */, false /* isSecure */,
+                            null);
+        kvlite.setVerbose(false);
+        kvlite.start(true);
+
+        store = KVStoreFactory.getStore(
+            new KVStoreConfig("kvstore", "localhost:" + PORT));
+        store.executeSync("CREATE TABLE t (sk INTEGER, id INTEGER, " +
+                          "a STRING, ia STRING, b INTEGER, c INTEGER, " +
+                          "PRIMARY KEY(SHARD(sk), id))");
+        store.executeSync("CREATE INDEX iaIndex ON t(ia)");
+
+        TableAPI api = store.getTableAPI();
+        Table table = api.getTable("t");
+        Random random = new Random(1);
+
+        for (int id = 0; id < ROWS; ++id) {
+            int sk = id % SHARD_KEYS;
+            String a = (id % 997 == 0 ? null : "g" + random.nextInt(300));
+            int b = random.nextInt(1000);
+
+            Row row = table.createRow();
+            row.put("sk", sk).put("id", id).put("b", b).put("c", id % 3);
+            if (a == null) {
+                row.putNull("a").putNull("ia");
+            } else {
+                row.put("a", a).put("ia", a);
+            }
+            api.put(row, null, null);
+
+            String key = String.valueOf(a);
+            add(expected, key, b);
+            if (sk == 1) {
+                add(expectedSk1, key, b);
+            }
+            add(expectedPairs, (id % 3) + "," + a, b);
+        }
+    }
+
+    @AfterClass
+    public static void stopStore() {
+
+        if (store != null) {
+            store.close();
+        }
+        if (kvlite != null) {
+            kvlite.stop(false);
+        }
+        if (root != null) {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    @Test
+    public void testPlans() {
+
+        assertTrue(plan("SELECT a, " + STAR + " FROM t GROUP BY a").
+                   contains("via hashing"));
+        assertFalse(plan("SELECT ia, " + STAR + " FROM t GROUP BY ia").
+                    contains("via hashing"));
+    }
+
+    @Test
+    public void testMatchesSortedGroupBy() {
+
+        Map<String, List<Long>> sorted =
+            groups(run("SELECT ia, " + STAR + " FROM t GROUP BY ia",
+                       new ExecuteOptions()));
+        assertEquals(expected, sorted);
+
+        for (int batchSize : new int[] { 1, 2, 7, 100, 0 }) {
+            ExecuteOptions options = new ExecuteOptions();
+            if (batchSize > 0) {
+                options.setResultsBatchSize(batchSize);
+            }
+
+            assertEquals("batch size " + batchSize, sorted,
+                         groups(run("SELECT a, " + STAR + " FROM t " +
+                                    "GROUP BY a", options)));
+        }
+    }
+
+    @Test
+    public void testSinglePartition() {
+
+        for (int batchSize : new int[] { 1, 3, 100 }) {
+            ExecuteOptions options =
+                new ExecuteOptions().setResultsBatchSize(batchSize);
+
+            assertEquals("batch size " + batchSize, expectedSk1,
+                         groups(run("SELECT a, " + STAR + " FROM t " +
+                                    "WHERE sk = 1 GROUP BY a", options)));
+        }
+    }
+
+    @Test
+    public void testMultipleColumns() {
+
+        for (int batchSize : new int[] { 2, 0 }) {
+            ExecuteOptions options = new ExecuteOptions();
+            if (batchSize > 0) {
+                options.setResultsBatchSize(batchSize);
+            }
+
+            assertEquals("batch size " + batchSize, expectedPairs,
+                         groups(run("SELECT c, a, " + STAR + " FROM t " +
+                                    "GROUP BY c, a", options)));
+        }
+    }
+
+    @Test
+    public void testOffsetAndLimit() {
+
+        String query = "SELECT a, " + STAR + " FROM t GROUP BY a";
+
+        for (int batchSize : new int[] { 2, 10, 0 }) {
+            ExecuteOptions options = new ExecuteOptions();
+            if (batchSize > 0) {
+                options.setResultsBatchSize(batchSize);
+            }
+
+            List<RecordValue> page =
+                run(query + " LIMIT 5 OFFSET 3", options);
+            assertEquals(5, page.size());
+            checkGroups(page);
+
+            page = run(query + " LIMIT 1000 OFFSET 10", options);
+            assertEquals(expected.size() - 10, page.size());
+            checkGroups(page);
+
+            assertEquals(0, run(query + " OFFSET " + expected.size(),
+                                options).size());
+        }
+    }
+
+    @Test
+    public void testClientMemoryLimit() {
+
+        assertEquals(1024L * 1024 * 1024,
+                     new ExecuteOptions().getMaxMemoryConsumption());
+
+        String query = "SELECT a, " + STAR + " FROM t GROUP BY a";
+
+        try {
+            run(query, new ExecuteOptions().setMaxMemoryConsumption(10000));
+            fail("the groups do not fit in 10000 bytes");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage(),
+                       e.getMessage().contains("bytes of memory"));
+        }
+
+        /* A query that fails at the client does not affect the next one */
+        assertEquals(expected, groups(run(query, new ExecuteOptions())));
+    }
+
+    private static void add(Map<String, List<Long>> groups,
+                            String key,
+                            long b) {
+
+        List<Long> group = groups.get(key);
+        if (group == null) {
+            groups.put(key, Arrays.asList(1L, b, b, b));
+            return;
+        }
+        group.set(0, group.get(0) + 1);
+        group.set(1, group.get(1) + b);
+        group.set(2, Math.min(group.get(2), b));
+        group.set(3, Math.max(group.get(3), b));
+    }
+
+    private static String plan(String query) {
+        return store.prepare(query).toString();
+    }
+
+    private static List<RecordValue> run(String query,
+                                         ExecuteOptions options) {
+
+        List<RecordValue> results = new ArrayList<RecordValue>();
+        StatementResult result = store.executeSync(query, options);
+        try {
+            for (RecordValue res : result) {
+                results.add(res);
+            }
+        } finally {
+            result.close();
+        }
+        return results;
+    }
+
+    /*
+     * The results by their grouping fields, which must be unique.
+     */
+    private static Map<String, List<Long>> groups(List<RecordValue> results) {
+
+        Map<String, List<Long>> groups = new HashMap<String, List<Long>>();
+
+        for (RecordValue res : results) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < res.size() - 4; ++i) {
+                FieldValue key = res.get(i);
+                if (i > 0) {
+                    sb.append(",");
+                }
+                sb.append(key.isNull() ? "null" : key.toString());
+            }
+            String name = sb.toString();
+
+            List<Long> group = Arrays.asList(
+                res.get("cnt").asLong().get(),
+                res.get("s").asLong().get(),
+                (long)res.get("mn").asInteger().get(),
+                (long)res.get("mx").asInteger().get());
+
+            assertEquals("group " + name + " returned twice",
+                         null, groups.put(name, group));
+        }
+        return groups;
+    }
+
+    /*
+     * Each result is a whole group, and no group is returned twice.
+     */
+    private static void checkGroups(List<RecordValue> results) {
+
+        Set<String> seen = new HashSet<String>();
+
+        for (RecordValue res : results) {
+            FieldValue key = res.get(0);
+            String name = (key.isNull() ? "null" : key.asString().get());
+            assertTrue(seen.add(name));
+
+            List<Long> group = expected.get(name);
+            assertNotNull(name, group);
+            assertEquals(group.get(0).longValue(),
+                         res.get("cnt").asLong().get());
+            assertEquals(group.get(1).longValue(),
+                         res.get("s").asLong().get());
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*-
+ * Copyright (C) 2011, 2018 Oracle and/or its affiliates. All rights reserved.
+ *
+ * This file was distributed by Oracle as part of a version of Oracle NoSQL
+ * Database made available at:
+ *
+ * http://www.oracle.com/technetwork/database/database-technologies/nosqldb/downloads/index.html
+ *
+ * Please see the LICENSE file included in the top-level directory of the
+ * appropriate version of Oracle NoSQL Database for a copy of the license and
+ * additional information.
+ */
+
+package oracle.kv.impl.query.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import oracle.kv.impl.api.ops.TableQuery;
+import oracle.kv.impl.api.query.PreparedStatementImpl.DistributionKind;
+import oracle.kv.impl.api.table.EmptyValueImpl;
+import oracle.kv.impl.api.table.FieldDefFactory;
+import oracle.kv.impl.api.table.FieldMap;
+import oracle.kv.impl.api.table.FieldValueImpl;
+import oracle.kv.impl.api.table.IntegerDefImpl;
+import oracle.kv.impl.api.table.NullJsonValueImpl;
+import oracle.kv.impl.api.table.NullValueImpl;
+import oracle.kv.impl.api.table.RecordDefImpl;
+import oracle.kv.impl.api.table.RecordValueImpl;
+import oracle.kv.impl.query.compiler.QueryFormatter;
+import oracle.kv.impl.query.compiler.SortSpec;
+import oracle.kv.impl.util.SerialVersion;
+import oracle.kv.query.ExecuteOptions;
+
+import org.junit.Test;
+
+/**
+ * Sorts lists of records {id INTEGER, v JSON, pad STRING} with SortIter, by
+ * v and then id, and checks the ids against the same records sorted in
+ * memory. Small memory budgets make SortIter spill runs to temporary files,
+ * whose names start with "kvsort".
+ */
+public class SortIterTest {
+
+    private static final int SORT_REG = 0;
+    private static final int INPUT_REG = 1;
+
+    private static final IntegerDefImpl INTEGER =
+        FieldDefFactory.createIntegerDef();
+
+    private static final RecordDefImpl RECORD;
+
+    static {
+        FieldMap fields = new FieldMap();
+        fields.put("id", INTEGER, false, null);
+        fields.put("v", FieldDefFactory.createJsonDef(), true, null);
+        fields.put("pad", FieldDefFactory.createStringDef(), false, null);
+        RECORD = FieldDefFactory.createRecordDef(fields, null);
+    }
+
+    /* The kinds of v, in their order after all numbers with NULLS LAST */
+    private static final int NUMBER = 0;
+    private static final int EMPTY = 1;
+    private static final int JSON_NULL = 2;
+    private static final int NULL = 3;
+
+    /*
+     * The input of the sort: returns the records of a list.
+     */
+    private static class ListIter extends PlanIter {
+
+        private static class ListIterState extends PlanIterState {
+            int theNext;
+        }
+
+        private final List<FieldValueImpl> theResults;
+
+        ListIter(List<FieldValueImpl> results) {
+            super(1, INPUT_REG, null);
+            theResults = results;
+        }
+
+        @Override
+        public PlanIterKind getKind() {
+            return PlanIterKind.RECV;
+        }
+
+        @Override
+        public void open(RuntimeControlBlock rcb) {
+            rcb.setState(theStatePos, new ListIterState());
+        }
+
+        @Override
+        public boolean next(RuntimeControlBlock rcb) {
+
+            ListIterState state = (ListIterState)rcb.getState(theStatePos);
+
+            if (state.theNext == theResults.size()) {
+                state.done();
+                return false;
+            }
+
+            rcb.setRegVal(theResultReg, theResults.get(state.theNext++));
+            return true;
+        }
+
+        @Override
+        public void reset(RuntimeControlBlock rcb) {
+            rcb.getState(theStatePos).reset(this);
+        }
+
+        @Override
+        public void close(RuntimeControlBlock rcb) {
+            rcb.getState(theStatePos).close();
+        }
+
+        @Override
+        protected void displayContent(StringBuilder sb,
+                                      QueryFormatter formatter) {
+        }
+    }
+
+    /*
+     * An open sort over copies of the given records, with the given memory
+     * budget. The records are copied because the sort turns the EMPTY values
+     * of its results into NULLs.
+     */
+    private static class Sort {
+
+        final SortIter theIter;
+        final RuntimeControlBlock theRCB;
+
+        Sort(List<FieldValueImpl> input, SortSpec spec, long budget) {
+
+            List<FieldValueImpl> copy = new ArrayList<FieldValueImpl>();
+            for (FieldValueImpl res : input) {
+                copy.add(res.clone());
+            }
+
+            theIter = new SortIter(0, SORT_REG, new ListIter(copy), RECORD,
+                                   new int[] { 1, 0 },
+                                   new SortSpec[] { spec, spec(false, false) });
+
+            ExecuteOptions options =
+                new ExecuteOptions().setMaxMemoryConsumption(budget);
+
+            /* A query op, for the RCB not to need a store */
+            TableQuery op = new TableQuery(DistributionKind.ALL_PARTITIONS,
+                                           RECORD, false, theIter, null, 2, 2,
+                                           0, null, (byte)0, 0, 0, 0, null, 0);
+
+            theRCB = new RuntimeControlBlock(null, null, null, null, null,
+                                             options, op, null, theIter, 2, 2,
+                                             null);
+            theIter.open(theRCB);
+        }
+
+        /* The ids of up to max results */
+        List<Integer> next(int max) {
+
+            List<Integer> ids = new ArrayList<Integer>();
+
+            while (ids.size() < max && theIter.next(theRCB)) {
+                RecordValueImpl res =
+                    (RecordValueImpl)theRCB.getRegVal(SORT_REG);
+                ids.add(res.get(0).getInt());
+            }
+            return ids;
+        }
+
+        void close() {
+            theIter.close(theRCB);
+        }
+    }
+
+    @Test
+    public void testInMemory() {
+        checkSort(records(1000, new Random(1)), spec(false, false),
+                  100 * 1024 * 1024);
+    }
+
+    @Test
+    public void testSpillAndMerge() {
+
+        List<FieldValueImpl> input = records(2000, new Random(2));
+
+        for (long budget : new long[] { 1, 2000, 20000 }) {
+            checkSort(input, spec(false, false), budget);
+            checkSort(input, spec(true, true), budget);
+        }
+    }
+
+    @Test
+    public void testMergeFanIn() {
+
+        List<FieldValueImpl> input = records(10000, new Random(3));
+
+        /* About 8 runs, merged 3 at a time */
+        long budget = 3 * 64 * 1024;
+        int before = countRunFiles();
+
+        Sort sort = new Sort(input, spec(false, false), budget);
+        List<Integer> ids = sort.next(1);
+        int during = countRunFiles() - before;
+        ids.addAll(sort.next(Integer.MAX_VALUE));
+        sort.close();
+
+        assertEquals(expected(input, spec(false, false)), ids);
+        assertTrue("runs merged at once: " + during,
+                   during > 0 && during <= 3);
+
+        /* The smallest fan-in, one run per result */
+        sort = new Sort(input.subList(0, 300), spec(true, false), 1);
+        ids = sort.next(1);
+        during = countRunFiles() - before;
+        ids.addAll(sort.next(Integer.MAX_VALUE));
+        sort.close();
+
+        assertEquals(expected(input.subList(0, 300), spec(true, false)), ids);
+        assertTrue("runs merged at once: " + during,
+                   during > 0 && during <= 2);
+    }
+
+    @Test
+    public void testTopNWithOffset() {
+
+        List<FieldValueImpl> input = records(3000, new Random(4));
+        int offset = 25;
+        int limit = 40;
+
+        for (SortSpec spec : allSpecs()) {
+            for (long budget : new long[] { 1, 2000, 100 * 1024 * 1024 }) {
+
+                Sort sort = new Sort(input, spec, budget);
+                sort.theIter.setLimit(sort.theRCB, offset + limit);
+
+                /* The offset is skipped by the SFW on top of the sort */
+                sort.next(offset);
+                List<Integer> ids = sort.next(limit);
+                sort.close();
+
+                assertEquals(expected(input, spec).subList(offset,
+                                                           offset + limit),
+                             ids);
+            }
+        }
+    }
+
+    @Test
+    public void testTopNCutoff() {
+
+        /* Ascending input: once the top results are spilled, nothing after
+         * them can make the top, so no other run is spilled */
+        List<FieldValueImpl> input = new ArrayList<FieldValueImpl>();
+        for (int i = 0; i < 5000; ++i) {
+            input.add(record(i, number(i)));
+        }
+
+        int before = countRunFiles();
+
+        Sort sort = new Sort(input, spec(false, false), 2000);
+        sort.theIter.setLimit(sort.theRCB, 100);
+        List<Integer> ids = sort.next(1);
+        int during = countRunFiles() - before;
+        ids.addAll(sort.next(Integer.MAX_VALUE));
+        sort.close();
+
+        assertEquals(expected(input, spec(false, false)).subList(0, 100), ids);
+        assertEquals(1, during);
+    }
+
+    @Test
+    public void testNullsOrdering() {
+
+        List<FieldValueImpl> input = new ArrayList<FieldValueImpl>();
+        Random random = new Random(5);
+
+        for (int i = 0; i < 400; ++i) {
+            switch (random.nextInt(5)) {
+            case 0:
+                input.add(record(i, NullValueImpl.getInstance()));
+                break;
+            case 1:
+                input.add(record(i, NullJsonValueImpl.getInstance()));
+                break;
+            case 2:
+                input.add(record(i, EmptyValueImpl.getInstance()));
+                break;
+            default:
+                input.add(record(i, number(random.nextInt(50))));
+            }
+        }
+
+        for (SortSpec spec : allSpecs()) {
+            checkSort(input, spec, 100 * 1024 * 1024);
+            checkSort(input, spec, 1000);
+        }
+    }
+
+    /*
+     * Every pair of values compares the opposite way round when swapped,
+     * as the sort and the merge assume.
+     */
+    @Test
+    public void testCompareAtomicsIsAntisymmetric() {
+
+        FieldValueImpl[] values = {
+            NullValueImpl.getInstance(), NullJsonValueImpl.getInstance(),
+            EmptyValueImpl.getInstance(), number(1), number(2)
+        };
+
+        for (boolean isDesc : new boolean[] { false, true }) {
+            for (boolean nullsFirst : new boolean[] { false, true }) {
+                for (FieldValueImpl v1 : values) {
+                    for (FieldValueImpl v2 : values) {
+                        int comp = ReceiveIter.compareAtomics(v1, v2, isDesc,
+                                                              nullsFirst);
+                        int reverse = ReceiveIter.compareAtomics(v2, v1,
+                                                                 isDesc,
+                                                                 nullsFirst);
+                        assertEquals(v1 + " vs " + v2,
+                                     Integer.signum(comp),
+                                     -Integer.signum(reverse));
+                        assertEquals(v1 + " vs " + v2,
+                                     v1 == v2, comp == 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRunFilesRemovedOnClose() {
+
+        List<FieldValueImpl> input = records(2000, new Random(6));
+        int before = countRunFiles();
+
+        /* Closed before the input is sorted */
+        Sort sort = new Sort(input, spec(false, false), 2000);
+        sort.close();
+        assertEquals(before, countRunFiles());
+
+        /* Closed in the middle of the merge */
+        sort = new Sort(input, spec(false, false), 2000);
+        sort.next(10);
+        assertTrue(countRunFiles() > before);
+        sort.close();
+        assertEquals(before, countRunFiles());
+
+        /* Closed in the middle of a top-N merge */
+        sort = new Sort(input, spec(true, true), 2000);
+        sort.theIter.setLimit(sort.theRCB, 500);
+        sort.next(10);
+        assertTrue(countRunFiles() > before);
+        sort.close();
+        assertEquals(before, countRunFiles());
+
+        /* Fully consumed */
+        sort = new Sort(input, spec(false, false), 2000);
+        sort.next(Integer.MAX_VALUE);
+        assertEquals(before, countRunFiles());
+        sort.close();
+    }
+
+    private static void checkSort(List<FieldValueImpl> input,
+                                  SortSpec spec,
+                                  long budget) {
+
+        Sort sort = new Sort(input, spec, budget);
+        List<Integer> ids = sort.next(Integer.MAX_VALUE);
+        sort.close();
+
+        assertEquals("desc " + spec.theIsDesc + ", nulls first " +
+                     spec.theNullsFirst + ", budget " + budget,
+                     expected(input, spec), ids);
+    }
+
+    /*
+     * The ids of the records sorted by v, as the spec says, and then by id.
+     */
+    private static List<Integer> expected(List<FieldValueImpl> input,
+                                          final SortSpec spec) {
+
+        List<FieldValueImpl> sorted = new ArrayList<FieldValueImpl>(input);
+
+        Collections.sort(sorted, new Comparator<FieldValueImpl>() {
+
+            @Override
+            public int compare(FieldValueImpl r1, FieldValueImpl r2) {
+
+                FieldValueImpl v1 = ((RecordValueImpl)r1).get(1);
+                FieldValueImpl v2 = ((RecordValueImpl)r2).get(1);
+                int comp = Integer.compare(kind(v1), kind(v2));
+
+                if (spec.theNullsFirst) {
+                    comp = -comp;
+                }
+
+                if (comp == 0 && kind(v1) == NUMBER) {
+                    comp = Integer.compare(v1.getInt(), v2.getInt());
+                    if (spec.theIsDesc) {
+                        comp = -comp;
+                    }
+                }
+
+                if (comp == 0) {
+                    comp = Integer.compare(((RecordValueImpl)r1).get(0).getInt(),
+                                           ((RecordValueImpl)r2).get(0).getInt());
+                }
+                return comp;
+            }
+        });
+
+        List<Integer> ids = new ArrayList<Integer>();
+        for (FieldValueImpl res : sorted) {
+            ids.add(((RecordValueImpl)res).get(0).getInt());
+        }
+        return ids;
+    }
+
+    private static int kind(FieldValueImpl v) {
+
+        if (v.isNull()) {
+            return NULL;
+        }
+        if (v.isJsonNull()) {
+            return JSON_NULL;
+        }
+        if (v.isEMPTY()) {
+            return EMPTY;
+        }
+        return NUMBER;
+    }
+
+    private static List<FieldValueImpl> records(int num, Random random) {
+
+        List<FieldValueImpl> records = new ArrayList<FieldValueImpl>();
+        for (int i = 0; i < num; ++i) {
+            records.add(record(i, number(random.nextInt(num / 4))));
+        }
+        return records;
+    }
+
+    private static RecordValueImpl record(int id, FieldValueImpl v) {
+
+        RecordValueImpl record = RECORD.createRecord();
+        record.put(0, id);
+        record.put(1, v);
+        record.put(2, "padding padding padding " + id);
+        return record;
+    }
+
+    private static FieldValueImpl number(int value) {
+        return INTEGER.createInteger(value);
+    }
+
+    private static SortSpec[] allSpecs() {
+        return new SortSpec[] {
+            spec(false, false), spec(false, true),
+            spec(true, false), spec(true, true)
+        };
+    }
+
+    /*
+     * SortSpec has no public constructor besides the serialized one.
+     */
+    private static SortSpec spec(boolean isDesc, boolean nullsFirst) {
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeBoolean(isDesc);
+            out.writeBoolean(nullsFirst);
+            out.close();
+
+            return new SortSpec(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())),
+                SerialVersion.CURRENT);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private static int countRunFiles() {
+
+        File[] files = new File(System.getProperty("java.io.tmpdir")).
+            listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.startsWith("kvsort");
+                }
+            });
+        return (files == null ? 0 : files.length);
+    }
+}
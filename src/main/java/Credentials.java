@@ -0,0 +1,190 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2 password hashes, with a small cache of recent logins.
+ *
+ * The stored form is "pbkdf2$iterations$salt$hash" in the players row's
+ * password column. A successful login remembers a cheap SHA-256 digest of
+ * the password for a few minutes, so a player logging in again skips the
+ * slow hash. Rows written before hashing keep matching on plaintext.
+ *
+ * The async forms run the slow hash on a small pool with a bounded queue,
+ * never on the store callback that asked for it; when the queue is full the
+ * future fails with RejectedExecutionException.
+ */
+class Credentials {
+    // same parameters as oracle.kv.impl.security.PasswordHash suggests
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final int ITERATIONS = 5000;
+
+    private static final String PREFIX = "pbkdf2$";
+
+    // hashes waiting for a thread before new ones are refused
+    private static final int HASH_QUEUE = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final class Verified {
+        final String stored;
+        final byte[] digest;
+        final long expiresAt;
+
+        Verified(String stored, byte[] digest, long expiresAt) {
+            this.stored = stored;
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlMillis;
+    private final ExecutorService hashing;
+
+    // email -> last verified login, least recently used dropped first
+    private final Map<String, Verified> verified;
+
+    Credentials(int capacity, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.verified = new LinkedHashMap<String, Verified>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verified> eldest) {
+                return size() > capacity;
+            }
+        };
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.hashing = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(HASH_QUEUE), r -> {
+                    Thread thread = new Thread(r, "password-hash");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // value to store in the password column for a new player
+    static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + ITERATIONS + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, ITERATIONS));
+    }
+
+    // hash(password) on the hashing pool
+    CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> hash(password));
+    }
+
+    // true if password matches the stored column value
+    boolean verify(String email, String password, String stored) {
+        byte[] digest = sha256(email + "\0" + password);
+        Boolean cached = cached(email, stored, digest);
+        return (cached != null) ? cached : check(email, password, stored, digest);
+    }
+
+    // verify on the hashing pool; a cached login is answered without the hop
+    CompletableFuture<Boolean> verifyAsync(String email, String password, String stored) {
+        byte[] digest = sha256(email + "\0" + password);
+        Boolean cached = cached(email, stored, digest);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return submit(() -> check(email, password, stored, digest));
+    }
+
+    // true for plaintext rows from before hashing, which a login should replace
+    static boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX);
+    }
+
+    // null unless a recent login with this stored value decides it
+    private Boolean cached(String email, String stored, byte[] digest) {
+        synchronized (verified) {
+            Verified last = verified.get(email);
+            if (last != null && last.stored.equals(stored) && System.currentTimeMillis() < last.expiresAt) {
+                return MessageDigest.isEqual(last.digest, digest);
+            }
+        }
+        return null;
+    }
+
+    private boolean check(String email, String password, String stored, byte[] digest) {
+        if (!matches(password, stored)) {
+            return false;
+        }
+
+        synchronized (verified) {
+            verified.put(email, new Verified(stored, digest, System.currentTimeMillis() + ttlMillis));
+        }
+        return true;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, hashing);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> refused = new CompletableFuture<T>();
+            refused.completeExceptionally(e);
+            return refused;
+        }
+    }
+
+    int size() {
+        synchronized (verified) {
+            return verified.size();
+        }
+    }
+
+    static boolean matches(String password, String stored) {
+        if (!stored.startsWith(PREFIX)) {
+            // signed up before passwords were hashed
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                                         stored.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return false;
+        }
+
+        Base64.Decoder base64 = Base64.getDecoder();
+        byte[] salt = base64.decode(parts[2]);
+        byte[] expected = base64.decode(parts[3]);
+
+        return MessageDigest.isEqual(expected, pbkdf2(password, salt, Integer.parseInt(parts[1])));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        try {
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BYTES * 8);
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
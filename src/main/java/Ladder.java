@@ -0,0 +1,36 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * In-process state of one ladder, keyed by its ladderId.
+ *
+ * Every row of a ladder lives under the ladderId shard key, so a ladder is a
+ * single partition and its batches commit as single-shard transactions, while
+ * separate ladders spread across shards. The rank cache and the cached
+ * leaderboard body are per ladder for the same reason; both fill lazily from
+ * the store, so a ladder's state can be dropped and rebuilt at any time.
+ */
+class Ladder {
+    // ids appear in URLs and shard keys, so keep them short and plain
+    private static final Pattern ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    final String id;
+
+    // rank -> email, kept in step with every rank-changing write
+    final RankCache ranks = new RankCache();
+
+    // serialized /getPlayers body, dropped after every ladder write
+    final Leaderboard leaderboard = new Leaderboard();
+
+    // the running shift that closes a chunked delete's gap, shared by the
+    // requests that wait for it; guarded by this
+    CompletableFuture<Void> closingGap;
+
+    Ladder(String id) {
+        this.id = id;
+    }
+
+    static boolean validId(String id) {
+        return id != null && ID.matcher(id).matches();
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+import io.helidon.common.http.DataChunk;
+import io.helidon.common.reactive.Flow;
+import io.helidon.common.reactive.SubmissionPublisher;
+
+import oracle.kv.table.Row;
+import oracle.kv.table.TableOperation;
+
+/**
+ * Fans ladder changes out to every client connected to a ladder's /events.
+ *
+ * PongService reports each batch it commits; every player row written
+ * becomes a server-sent "put" event carrying the leaderboard entry, and every
+ * deleted player a "delete" event carrying the email. A batch never spans
+ * ladders, so it goes only to the clients watching its ladder. Each client has its own
+ * bounded publisher, so a slow client loses events instead of holding up the
+ * store callback that reported them.
+ */
+class LadderEvents {
+    // events buffered per client before new ones are dropped
+    private static final int CLIENT_BUFFER = 256;
+
+    // keeps idle connections open and finds clients that went away
+    private static final long HEARTBEAT_SECONDS = 15;
+
+    private static final byte[] HEARTBEAT = ": heartbeat\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final class Client {
+        final String ladderId;
+        final SubmissionPublisher<DataChunk> publisher = new SubmissionPublisher<DataChunk>(Runnable::run, CLIENT_BUFFER);
+
+        // set once the response has subscribed, so a new client is not pruned early
+        volatile boolean attached;
+
+        // a client still unattached a heartbeat after this never had its
+        // response sent, e.g. the request failed first, and is pruned
+        final long subscribedAt = System.nanoTime();
+
+        Client(String ladderId) {
+            this.ladderId = ladderId;
+        }
+    }
+
+    private final String playersTable;
+    private final List<Client> clients = new CopyOnWriteArrayList<Client>();
+
+    LadderEvents(String playersTable) {
+        this.playersTable = playersTable;
+
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ladder-events-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleAtFixedRate(() -> broadcast(null, HEARTBEAT), HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // new event stream for one client of a ladder, to be handed to ServerResponse.send
+    Flow.Publisher<DataChunk> subscribe(String ladderId) {
+        Client client = new Client(ladderId);
+        clients.add(client);
+        return client.publisher;
+    }
+
+    // reports a committed batch; rows of other tables in the batch are skipped
+    void publish(List<TableOperation> ops) {
+        if (clients.isEmpty()) {
+            return;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String ladderId = null;
+
+        for (TableOperation op : ops) {
+            switch (op.getType()) {
+            case DELETE:
+            case DELETE_IF_VERSION:
+                if (playersTable.equals(op.getPrimaryKey().getTable().getFullName())) {
+                    ladderId = op.getPrimaryKey().get("ladderId").asString().get();
+                    writeEvent(out, "delete", op.getPrimaryKey().get("email").asString().get(), null);
+                }
+                break;
+            default:
+                if (playersTable.equals(op.getRow().getTable().getFullName())) {
+                    ladderId = op.getRow().get("ladderId").asString().get();
+                    writeEvent(out, "put", null, op.getRow());
+                }
+                break;
+            }
+        }
+
+        if (out.size() > 0) {
+            broadcast(ladderId, out.toByteArray());
+        }
+    }
+
+    private static void writeEvent(ByteArrayOutputStream out, String type, String email, Row player) {
+        byte[] header = ("event: " + type + "\ndata: ").getBytes(StandardCharsets.UTF_8);
+        out.write(header, 0, header.length);
+
+        JsonGenerator generator = Json.createGenerator(out);
+        if (player != null) {
+            Leaderboard.writePlayer(generator, player);
+        } else {
+            generator.writeStartObject().write("email", email).writeEnd();
+        }
+        generator.flush();
+
+        out.write('\n');
+        out.write('\n');
+    }
+
+    // to the clients of one ladder, or all of them if ladderId is null
+    private void broadcast(String ladderId, byte[] event) {
+        for (Client client : clients) {
+            if (ladderId != null && !ladderId.equals(client.ladderId)) {
+                continue;
+            }
+            if (client.publisher.hasSubscribers()) {
+                client.attached = true;
+                client.publisher.offer(DataChunk.create(event), (subscriber, dropped) -> false);
+            } else if ((client.attached || neverAttached(client)) && clients.remove(client)) {
+                // connection closed, the response cancelled its subscription
+                client.publisher.close();
+            }
+        }
+    }
+
+    private static boolean neverAttached(Client client) {
+        return System.nanoTime() - client.subscribedAt > TimeUnit.SECONDS.toNanos(HEARTBEAT_SECONDS);
+    }
+}
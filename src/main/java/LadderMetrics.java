@@ -0,0 +1,127 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Timer;
+
+import io.helidon.webserver.Handler;
+
+import oracle.kv.KVStore;
+import oracle.kv.stats.KVStats;
+import oracle.kv.stats.OperationMetrics;
+
+/**
+ * Latency of the service's endpoints and store calls, served under /metrics.
+ *
+ * Every route is timed from request to response sent ("endpoint.*"), every
+ * store call from issue to completion ("kv.get", "kv.iterator", "kv.execute")
+ * and building a player list in memory separately ("json.leaderboard"), so a
+ * slow request can be put down to the store, serialization or the network;
+ * a streamed leaderboard is timed as one "kv.iterator" call. The
+ * client's own KVStats per-operation figures are exported as "kv.client.*"
+ * gauges once the store is open, refreshed at most once a second.
+ *
+ * Versioned ladder writes report contention as "contention.<operation>.*":
+ * batches that lost a race, requests that ran out of attempts, and a
+ * histogram of attempts per request.
+ */
+class LadderMetrics {
+    private static final long STATS_REFRESH_MILLIS = 1000;
+
+    private final MetricRegistry registry;
+    private KVStore store;
+
+    final Timer get;
+    final Timer iterator;
+    final Timer execute;
+    final Timer json;
+
+    private KVStats stats;
+    private long statsTakenAt;
+
+    LadderMetrics(MetricRegistry registry) {
+        this.registry = registry;
+
+        get = registry.timer("kv.get");
+        iterator = registry.timer("kv.iterator");
+        execute = registry.timer("kv.execute");
+        json = registry.timer("json.leaderboard");
+    }
+
+    // route handler that also times the request until its response is sent
+    Handler timed(String endpoint, Handler handler) {
+        Timer timer = registry.timer("endpoint." + endpoint);
+
+        return (request, response) -> {
+            Timer.Context context = timer.time();
+            response.whenSent().whenComplete((sent, t) -> context.stop());
+            handler.accept(request, response);
+        };
+    }
+
+    // times a store call from issue to completion
+    static <T> CompletableFuture<T> time(Timer timer, Supplier<CompletableFuture<T>> call) {
+        Timer.Context context = timer.time();
+        return call.get().whenComplete((result, t) -> context.stop());
+    }
+
+    // a guarded batch aborted because a row it read had changed
+    void conflict(String operation) {
+        registry.counter("contention." + operation + ".conflicts").inc();
+    }
+
+    // a request answered 409, or a rank shift left for later, after every attempt lost
+    void exhausted(String operation) {
+        registry.counter("contention." + operation + ".exhausted").inc();
+    }
+
+    // attempts a request took to go through
+    void attempts(String operation, int attempts) {
+        registry.histogram("contention." + operation + ".attempts").update(attempts);
+    }
+
+    // exports the store client's stats, called once it has been opened
+    synchronized void watch(KVStore store) {
+        this.store = store;
+
+        for (OperationMetrics op : store.getStats(false).getOpMetrics()) {
+            String name = op.getOperationName();
+            String prefix = "kv.client." + name + ".";
+
+            gauge(prefix + "count", MetricUnits.NONE, m -> m.getTotalOps(), name);
+            gauge(prefix + "averageLatency", MetricUnits.MILLISECONDS, m -> m.getAverageLatencyMs(), name);
+            gauge(prefix + "p95Latency", MetricUnits.MILLISECONDS, m -> m.get95thLatencyMs(), name);
+            gauge(prefix + "p99Latency", MetricUnits.MILLISECONDS, m -> m.get99thLatencyMs(), name);
+            gauge(prefix + "maxLatency", MetricUnits.MILLISECONDS, m -> m.getMaxLatencyMs(), name);
+        }
+
+        registry.register(new Metadata("kv.client.requestRetries", MetricType.GAUGE),
+                (Gauge<Long>) () -> stats().getRequestRetryCount());
+    }
+
+    private void gauge(String name, String unit, Function<OperationMetrics, Number> value, String operation) {
+        registry.register(new Metadata(name, MetricType.GAUGE, unit), (Gauge<Number>) () -> {
+            for (OperationMetrics op : stats().getOpMetrics()) {
+                if (op.getOperationName().equals(operation)) {
+                    return value.apply(op);
+                }
+            }
+            return 0;
+        });
+    }
+
+    // one KVStats shared by every gauge read in the same scrape
+    private synchronized KVStats stats() {
+        long now = System.currentTimeMillis();
+        if (stats == null || now - statsTakenAt > STATS_REFRESH_MILLIS) {
+            stats = store.getStats(false);
+            statsTakenAt = now;
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Columns of the ladders and ladders.players tables, in table order.
+ *
+ * PongService creates the tables from the DDL built here, and tests and
+ * benchmarks build rows in an in-memory table built from the same columns
+ * (InMemorySchema, in the test sources), so a column added to the service
+ * shows up in both.
+ */
+final class LadderSchema {
+    // {name, type}; ladderId is the primary and shard key. shiftGap is the
+    // vacant rank while a delete closes up a long ladder in chunks, else null
+    private static final String[][] LADDER_COLUMNS = {
+        { "ladderId", "STRING" },
+        { "playerCount", "INTEGER" },
+        { "shiftGap", "INTEGER" },
+    };
+
+    // {name, type} after the ladderId inherited from ladders; email is the primary key
+    private static final String[][] PLAYER_COLUMNS = {
+        { "email", "STRING" },
+        { "rank", "INTEGER" },
+        { "winStreak", "INTEGER" },
+        { "wins", "INTEGER" },
+        { "losses", "INTEGER" },
+        { "rating", "INTEGER DEFAULT " + Ratings.INITIAL + " NOT NULL" },
+        { "name", "STRING" },
+        { "password", "STRING" },
+        { "challenger", "BOOLEAN" },
+        { "challenged", "BOOLEAN" },
+    };
+
+    private LadderSchema() {
+    }
+
+    static String laddersDdl() {
+        return createTable("ladders", LADDER_COLUMNS, "ladderId");
+    }
+
+    static String playersDdl() {
+        return createTable("ladders.players", PLAYER_COLUMNS, "email");
+    }
+
+    // copies of the columns above, for the in-memory tables of tests and benchmarks
+    static String[][] ladderColumns() {
+        return LADDER_COLUMNS.clone();
+    }
+
+    static String[][] playerColumns() {
+        return PLAYER_COLUMNS.clone();
+    }
+
+    private static String createTable(String table, String[][] columns, String primaryKey) {
+        StringBuilder ddl = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(table).append(" (");
+        for (String[] column : columns) {
+            ddl.append(column[0]).append(' ').append(column[1]).append(',');
+        }
+        return ddl.append("PRIMARY KEY (").append(primaryKey).append("))").toString();
+    }
+}
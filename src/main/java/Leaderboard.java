@@ -0,0 +1,92 @@
+import java.io.ByteArrayOutputStream;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+import oracle.kv.table.Row;
+
+/**
+ * Serialized GET /getPlayers response, rebuilt only after the ladder changes.
+ *
+ * Every successful ladder write calls {@link #invalidate()}; the next read
+ * rebuilds the body once and every read after that is served straight from
+ * the cached bytes, or answered 304 when the client already holds the ETag.
+ */
+class Leaderboard {
+
+    static final class Snapshot {
+        final byte[] body;
+        final String etag;
+
+        Snapshot(byte[] body) {
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+
+            this.body = body;
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" + body.length + "\"";
+        }
+    }
+
+    private Snapshot snapshot;
+    private long generation;
+
+    // cached snapshot, or null if the ladder changed since it was built
+    synchronized Snapshot current() {
+        return snapshot;
+    }
+
+    // read before rebuilding, hand back to publish()
+    synchronized long generation() {
+        return generation;
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        snapshot = null;
+    }
+
+    // caches the body unless the ladder changed while it was being built
+    synchronized Snapshot publish(byte[] body, long builtAtGeneration) {
+        Snapshot built = new Snapshot(body);
+        if (builtAtGeneration == generation) {
+            snapshot = built;
+        }
+        return built;
+    }
+
+    // {"players":[...]} with players in the order given, which must be by rank
+    static byte[] serialize(Iterator<Row> playersByRank) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonGenerator generator = Json.createGenerator(out);
+
+        generator.writeStartObject().writeStartArray("players");
+
+        while (playersByRank.hasNext()) {
+            writePlayer(generator, playersByRank.next());
+        }
+
+        generator.writeEnd().writeEnd();
+        generator.close();
+        return out.toByteArray();
+    }
+
+    // one leaderboard entry; also the payload of a ladder change event
+    static void writePlayer(JsonGenerator generator, Row player) {
+        int wins = player.get("wins").asInteger().get();
+        int losses = player.get("losses").asInteger().get();
+        double ratio = (losses == 0) ? wins : (double)wins / (double)losses;
+        boolean inMatch = player.get("challenged").asBoolean().get() || player.get("challenger").asBoolean().get();
+
+        generator.writeStartObject()
+                 .write("name", player.get("name").asString().get())
+                 .write("email", player.get("email").asString().get())
+                 .write("rank", player.get("rank").asInteger().get())
+                 .write("inMatch", inMatch)
+                 .write("wins", wins).write("losses", losses)
+                 .write("winStreak", player.get("winStreak").asInteger().get())
+                 .write("ratio", ratio)
+                 .write("rating", player.get("rating").asInteger().get())
+                 .writeEnd();
+    }
+}
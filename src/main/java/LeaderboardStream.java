@@ -0,0 +1,182 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
+import io.helidon.common.http.DataChunk;
+import io.helidon.common.reactive.Flow;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import oracle.kv.table.Row;
+
+/**
+ * Streams a rank-ordered scan to the response as {"players":[...]}.
+ *
+ * Rows go straight from the {@code tableIteratorAsync} publisher into a
+ * JsonGenerator and out as one DataChunk per ROWS_PER_CHUNK players; the next
+ * batch of rows is only requested from the store once the response asks for
+ * another chunk, so a slow client holds the scan back instead of rows piling
+ * up in memory. The bytes can also be copied out, so a full leaderboard can
+ * be cached while it is first sent.
+ */
+class LeaderboardStream implements Flow.Publisher<DataChunk>, Subscriber<Row> {
+    static final int ROWS_PER_CHUNK = 64;
+
+    private final Publisher<Row> rows;
+    private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+    private final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+    private final JsonGenerator generator;
+
+    private Flow.Subscriber<? super DataChunk> response;
+    private Subscription scan;
+    private boolean scanStarted;
+
+    // chunks the response asked for and has not been sent yet
+    private long demand;
+    private int rowsInChunk;
+    private boolean batchRequested;
+    private boolean lastChunkWritten;
+    private boolean finished;
+
+    // copy may be null; otherwise it receives every byte sent
+    LeaderboardStream(Publisher<Row> rows, ByteArrayOutputStream copy) {
+        this.rows = rows;
+        this.generator = Json.createGenerator(new OutputStream() {
+            @Override
+            public void write(int b) {
+                chunk.write(b);
+                if (copy != null) {
+                    copy.write(b);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                chunk.write(b, off, len);
+                if (copy != null) {
+                    copy.write(b, off, len);
+                }
+            }
+        });
+        generator.writeStartObject().writeStartArray("players");
+    }
+
+    // completes once the last chunk is handed to the response
+    CompletableFuture<Void> done() {
+        return done;
+    }
+
+    @Override
+    public synchronized void subscribe(Flow.Subscriber<? super DataChunk> subscriber) {
+        response = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requested(n);
+            }
+
+            @Override
+            public void cancel() {
+                cancelled();
+            }
+        });
+    }
+
+    private synchronized void requested(long n) {
+        if (finished || n <= 0) {
+            return;
+        }
+        demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+
+        // the scan starts once the response is ready for it
+        if (!scanStarted) {
+            scanStarted = true;
+            rows.subscribe(this);
+            return;
+        }
+        drain();
+    }
+
+    private synchronized void cancelled() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (scan != null) {
+            scan.cancel();
+        }
+        done.completeExceptionally(new CancellationException("response cancelled"));
+    }
+
+    // sends the closing chunk if it is wanted, otherwise asks the scan for the next batch
+    private void drain() {
+        if (lastChunkWritten) {
+            if (demand > 0) {
+                finished = true;
+                emit();
+                response.onComplete();
+                done.complete(null);
+            }
+        } else if (scan != null && !batchRequested && demand > 0) {
+            batchRequested = true;
+            scan.request(ROWS_PER_CHUNK);
+        }
+    }
+
+    private void emit() {
+        byte[] bytes = chunk.toByteArray();
+        chunk.reset();
+        demand--;
+        response.onNext(DataChunk.create(bytes));
+    }
+
+    @Override
+    public synchronized void onSubscribe(Subscription subscription) {
+        scan = subscription;
+        drain();
+    }
+
+    @Override
+    public synchronized void onNext(Row player) {
+        if (finished) {
+            return;
+        }
+        Leaderboard.writePlayer(generator, player);
+
+        if (++rowsInChunk == ROWS_PER_CHUNK) {
+            // a batch is only requested while a chunk is wanted, so there is demand for it
+            rowsInChunk = 0;
+            batchRequested = false;
+            generator.flush();
+            emit();
+            drain();
+        }
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        response.onError(t);
+        done.completeExceptionally(t);
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        if (finished) {
+            return;
+        }
+        generator.writeEnd().writeEnd();
+        generator.close();
+        lastChunkWritten = true;
+        drain();
+    }
+}
@@ -98,6 +98,7 @@ public final class Main {
         PongService pongService = new PongService(config);
         HealthSupport health = HealthSupport.builder().add(HealthChecks.healthChecks()) // Adds a convenient set of
                                                                                         // checks
+                .add(pongService.storeHealth()) // DOWN until the ladder store is open
                 .build();
 
         return Routing.builder().register(JsonSupport.create()).register(health) // Health at "/health"
@@ -0,0 +1,34 @@
+/**
+ * A player's record, recomputed from their match history rather than read
+ * from the counters on their players row.
+ *
+ * Results must be added oldest first, which is the primary key order of
+ * ladders.players.matches.
+ */
+class MatchStats {
+    int matches;
+    int wins;
+    int losses;
+
+    // consecutive wins up to the latest match
+    int winStreak;
+    int longestWinStreak;
+
+    void add(boolean won) {
+        matches++;
+
+        if (won) {
+            wins++;
+            winStreak++;
+            longestWinStreak = Math.max(longestWinStreak, winStreak);
+        } else {
+            losses++;
+            winStreak = 0;
+        }
+    }
+
+    // same definition as the leaderboard's ratio
+    double ratio() {
+        return (losses == 0) ? wins : (double)wins / (double)losses;
+    }
+}
@@ -1,30 +1,59 @@
+import java.io.ByteArrayOutputStream;
 import java.util.Collections;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonBuilderFactory;
-import javax.json.JsonException;
 import javax.json.JsonObject;
 
 import io.helidon.common.http.Http;
+import io.helidon.common.http.MediaType;
 import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.webserver.Handler;
 import io.helidon.webserver.Routing;
 import io.helidon.webserver.ServerRequest;
 import io.helidon.webserver.ServerResponse;
 import io.helidon.webserver.Service;
 
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.HealthCheckResponseBuilder;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Timer;
+
+import oracle.kv.Consistency;
+import oracle.kv.Direction;
 import oracle.kv.KVStore;
 import oracle.kv.KVStoreConfig;
 import oracle.kv.KVStoreFactory;
+import oracle.kv.table.FieldRange;
+import oracle.kv.table.FieldValue;
+import oracle.kv.table.Index;
+import oracle.kv.table.IndexKey;
+import oracle.kv.table.MultiRowOptions;
 import oracle.kv.table.Table;
 import oracle.kv.table.TableAPI;
 import oracle.kv.table.PrimaryKey;
+import oracle.kv.table.ReturnRow;
 import oracle.kv.table.Row;
 import oracle.kv.table.TableIterator;
+import oracle.kv.table.TableIteratorOptions;
+import oracle.kv.table.TableOpExecutionException;
+import oracle.kv.table.TableOperation;
+import oracle.kv.table.TableOperationFactory;
 import oracle.kv.FaultException;
 
 import java.net.InetAddress;
@@ -34,42 +63,101 @@ import java.net.UnknownHostException;
 public class PongService implements Service {
     private static final JsonBuilderFactory JSON = Json.createBuilderFactory(Collections.emptyMap());
 
+    private static final MediaType EVENT_STREAM = MediaType.create("text", "event-stream");
+
+    // ladder served by the routes without a /ladders/{ladderId} prefix
+    private static final String DEFAULT_LADDER = "main";
+
+    // ladders whose rank cache and leaderboard are kept in memory at once
+    private static final int MAX_CACHED_LADDERS = 256;
+
+    // a write that loses a race to a concurrent one is re-read and retried this many times
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+
+    // most rows a paged /getPlayers request returns
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // ranks either side of the player for /getPlayers?email=
+    private static final int DEFAULT_WINDOW = 5;
+
+    // wait between store connection attempts, doubling up to the max
+    private static final long MIN_CONNECT_BACKOFF_MILLIS = 100;
+    private static final long MAX_CONNECT_BACKOFF_MILLIS = 5000;
+
+    // most recent matches listed by /getPlayerStats
+    private static final int RECENT_MATCHES = 10;
+
+    // opponents listed by /suggestOpponents when no limit is given
+    private static final int DEFAULT_SUGGESTIONS = 5;
+
+    // recent logins remembered so a login storm doesn't redo the password hash
+    private static final int CREDENTIAL_CACHE_SIZE = 1024;
+    private static final long CREDENTIAL_TTL_MILLIS = 5 * 60 * 1000;
+
+    // players moved up per batch when a delete closes the gap below it; a
+    // longer tail is shifted in several batches after the delete answers
+    private static final int SHIFT_CHUNK = 200;
+
+    // rows copied per batch from a single-ladder players table
+    private static final int MIGRATION_BATCH = 100;
+
     private KVStoreConfig kconfig;
     private KVStore kvstore;
     private TableAPI playersAPI;
+    private Table ladders;
     private Table players;
+    private Table matches;
+    private TableOperationFactory operations;
+    private Index rankIndex;
+    private Index ratingIndex;
+    private LadderMetrics metrics;
+
+    // reads that feed a ladder write, and the cached leaderboard, stay strict;
+    // other display reads may be served by a replica (application.yaml ladder.reads)
+    private final ReadProfile matchReads;
+    private final ReadProfile leaderboardReads;
+
+    // completes once the store is open and the ladder tables exist
+    private final CompletableFuture<Void> storeReady = new CompletableFuture<Void>();
+    private final ScheduledExecutorService storeStarter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ladder-store-connect");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile int connectAttempts;
+    private volatile String lastConnectError;
+
+    // ladderId -> in-process state of that ladder, least recently used dropped first
+    private final Map<String, Ladder> ladderState = new LinkedHashMap<String, Ladder>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Ladder> eldest) {
+            return size() > MAX_CACHED_LADDERS;
+        }
+    };
+
+    // committed ladder changes, pushed to /events clients
+    private final LadderEvents events = new LadderEvents("ladders.players");
+
+    private final Credentials credentials = new Credentials(CREDENTIAL_CACHE_SIZE, CREDENTIAL_TTL_MILLIS);
     
     class Player {
-        public Player(String name, String email, String password) {
+        // passwordHash is the Credentials.hash form stored in the row
+        public Player(String name, String email, String passwordHash) {
             this.name = name;
             this.email = email;
-            this.password = password;
+            this.password = passwordHash;
             this.winStreak = 0;
             this.wins = 0;
             this.losses = 0;
+            this.rating = Ratings.INITIAL;
 
-            // FIX: inefficient count method for updating rank
-            PrimaryKey key = players.createPrimaryKey();
-            int rowCount = 0;
-
-            try {
-                TableIterator<Row> it = playersAPI.tableIterator(key, null, null);
-                
-                while (it.hasNext()) {
-                    it.next();
-                    rowCount++;
-                }   
-            } catch (Exception e) {
-                System.out.println(e.getMessage());
-                System.exit(1);
-            }
-           
-            
-            this.rank = rowCount + 1;
+            // rank is handed out by the ladder's playerCount in addPlayer
+            this.rank = 0;
         }
 
-        public Row toRow() {
+        public Row toRow(String ladderId) {
             Row row = players.createRow();
+            row.put("ladderId", ladderId);
             row.put("email", this.email);
             row.put("rank", this.rank);
             row.put("name", this.name);
@@ -79,12 +167,13 @@ public class PongService implements Service {
             row.put("winStreak", this.winStreak);
             row.put("wins", this.wins);
             row.put("losses", this.losses);
+            row.put("rating", this.rating);
 
             return row;
         }
 
          // email unique identifier
-         int rank, winStreak, wins, losses;
+         int rank, winStreak, wins, losses, rating;
          String name = "", email = "", password = "";  
          boolean challenged = false, challenger = false;
  
@@ -103,30 +192,111 @@ public class PongService implements Service {
         }
         
         kconfig = new KVStoreConfig("kvstore", host + ":5000");
-        kvstore = KVStoreFactory.getStore(kconfig);
+        kconfig.setUseAsync(true);
+        metrics = new LadderMetrics(RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION));
+
+        matchReads = ReadProfile.from(config.get("ladder.reads.match"), new ReadProfile(Consistency.ABSOLUTE, 0));
+        leaderboardReads = ReadProfile.from(config.get("ladder.reads.leaderboard"), matchReads);
+
+        // serve /health straight away, the store is opened in the background
+        storeStarter.execute(() -> connect(MIN_CONNECT_BACKOFF_MILLIS));
+    }
+
+    // Opens the store and its tables, retrying with backoff until it is up
+    private void connect(long backoffMillis) {
+        connectAttempts++;
+        try {
+            openStore();
+        } catch (RuntimeException e) {
+            lastConnectError = e.toString();
+            System.out.println("Ladder store not ready (attempt " + connectAttempts + "), retrying in "
+                    + backoffMillis + " ms: " + e.getMessage());
+            storeStarter.schedule(() -> connect(Math.min(backoffMillis * 2, MAX_CONNECT_BACKOFF_MILLIS)),
+                    backoffMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        System.out.println("Ladder store ready after " + connectAttempts + " attempt(s)");
+        storeReady.complete(null);
+        storeStarter.shutdown();
+    }
+
+    private void openStore() {
+        if (kvstore == null) {
+            kvstore = KVStoreFactory.getStore(kconfig);
+            metrics.watch(kvstore);
+        }
 
         // deleteTable();
         createTable();
+        createRankIndex();
+        dropGlobalIndex("rankIndex");
         playersAPI = kvstore.getTableAPI();
-        players = playersAPI.getTable("players");
+        ladders = playersAPI.getTable("ladders");
+        players = playersAPI.getTable("ladders.players");
+        matches = playersAPI.getTable("ladders.players.matches");
+        if (ladders == null || players == null || matches == null) {
+            throw new IllegalStateException("ladder tables not created yet");
+        }
+        if (ladders.getField("shiftGap") == null) {
+            addShiftGapColumn();
+            ladders = playersAPI.getTable("ladders");
+        }
+        if (players.getField("rating") == null) {
+            addRatingColumn();
+            players = playersAPI.getTable("ladders.players");
+        }
+        createRatingIndex();
+        dropGlobalIndex("ratingIndex");
+        players = playersAPI.getTable("ladders.players");
+        if (players.getIndex("ladderRankIndex") == null || players.getIndex("ladderRatingIndex") == null) {
+            throw new IllegalStateException("ladder indexes not created yet");
+        }
+        rankIndex = players.getIndex("ladderRankIndex");
+        ratingIndex = players.getIndex("ladderRatingIndex");
+        operations = playersAPI.getTableOperationFactory();
+        migrateSingleLadderTable();
 
         // deleteAllRows(kvstore);
+        loadRankCache(ladder(DEFAULT_LADDER));
+
+        // a shift cut short by a restart; other ladders resume on their next delete
+        closeGap(ladder(DEFAULT_LADDER)).exceptionally(t -> {
+            System.out.println("Could not close the rank gap of ladder " + DEFAULT_LADDER + ": " + t);
+            return null;
+        });
+    }
+
+    // /health reports DOWN, and so 503, until the ladder tables can be used
+    HealthCheck storeHealth() {
+        return () -> {
+            HealthCheckResponseBuilder health = HealthCheckResponse.named("ladderStore")
+                    .withData("connectAttempts", connectAttempts);
+
+            if (storeReady.isDone() && playersAPI.getTable("ladders.players") != null) {
+                return health.up().build();
+            }
+            return health.down().withData("lastError", String.valueOf(lastConnectError)).build();
+        };
     }
 
+    // players is a child of ladders: a ladder's metadata row and its players
+    // share the ladderId shard key, so they can be written in one batch
     public void createTable() {
         try {
+            kvstore.executeSync(LadderSchema.laddersDdl());
+            kvstore.executeSync(LadderSchema.playersDdl());
+
+            // one row per player per match, under the player's row; history
+            // older than a year expires on its own
             String statement =
-                "CREATE TABLE players (" +
-                "email STRING," +
-                "rank INTEGER," +
-                "winStreak INTEGER," +
-                "wins INTEGER," +
-                "losses INTEGER," +
-                "name STRING," +
-                "password STRING," +
-                "challenger BOOLEAN," +
-                "challenged BOOLEAN," +
-                "PRIMARY KEY (email))"; // Required"
+                "CREATE TABLE IF NOT EXISTS ladders.players.matches (" +
+                "playedAt LONG," +
+                "opponent STRING," +
+                "won BOOLEAN," +
+                "rankBefore INTEGER," +
+                "rankAfter INTEGER," +
+                "PRIMARY KEY (playedAt)) USING TTL 365 DAYS";
 
                 kvstore.executeSync(statement);
             } catch (IllegalArgumentException e) {
@@ -138,11 +308,146 @@ public class PongService implements Service {
 
     }
 
-    public void deleteTable() {
+    // secondary index so a rank resolves to a player without a table scan;
+    // led by ladderId so each ladder's ranks form their own range
+    public void createRankIndex() {
         try {
-            String statement = "DROP TABLE players";
+            String statement = "CREATE INDEX IF NOT EXISTS ladderRankIndex ON ladders.players (ladderId, rank)";
 
             kvstore.executeSync(statement);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid statement:\n" + e.getMessage());
+        } catch (FaultException e) {
+            System.out.println
+            ("Statement couldn't be executed, please retry: " + e);
+        }
+    }
+
+    // tables created before ratings existed; every player starts at the initial rating
+    private void addRatingColumn() {
+        kvstore.executeSync("ALTER TABLE ladders.players (ADD rating INTEGER DEFAULT " + Ratings.INITIAL + " NOT NULL)");
+    }
+
+    // tables created before deletes were chunked; null means no shift is running
+    private void addShiftGapColumn() {
+        kvstore.executeSync("ALTER TABLE ladders (ADD shiftGap INTEGER)");
+    }
+
+    // secondary index so opponents of similar strength are one range scan away
+    public void createRatingIndex() {
+        try {
+            String statement = "CREATE INDEX IF NOT EXISTS ladderRatingIndex ON ladders.players (ladderId, rating)";
+
+            kvstore.executeSync(statement);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid statement:\n" + e.getMessage());
+        } catch (FaultException e) {
+            System.out.println
+            ("Statement couldn't be executed, please retry: " + e);
+        }
+    }
+
+    // single-ladder indexes from before ladders were scoped; they mixed every
+    // ladder's ranks together and only cost writes now
+    private void dropGlobalIndex(String name) {
+        try {
+            kvstore.executeSync("DROP INDEX IF EXISTS " + name + " ON ladders.players");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid statement:\n" + e.getMessage());
+        } catch (FaultException e) {
+            System.out.println
+            ("Statement couldn't be executed, please retry: " + e);
+        }
+    }
+
+    // stores from before ladders keep their one ladder in a top-level players
+    // table; it is copied into the default ladder once and then dropped. The
+    // ladder row is written last, so a copy cut short by a restart is redone
+    // (putIfAbsent skips the rows already there). If the default ladder
+    // already has a ladder row, players signed up under the new schema and
+    // the old ranks would collide with theirs, so the old table is left alone.
+    private void migrateSingleLadderTable() {
+        Table legacy = playersAPI.getTable("players");
+        if (legacy == null) {
+            return;
+        }
+
+        PrimaryKey ladderKey = ladders.createPrimaryKey();
+        ladderKey.put("ladderId", DEFAULT_LADDER);
+        if (playersAPI.get(ladderKey, null) != null) {
+            System.out.println("Table players not migrated, ladder " + DEFAULT_LADDER + " already has players");
+            return;
+        }
+
+        int copied = 0;
+        List<TableOperation> batch = new ArrayList<TableOperation>(MIGRATION_BATCH);
+        TableIterator<Row> it = playersAPI.tableIterator(legacy.createPrimaryKey(), null, null);
+        try {
+            while (it.hasNext()) {
+                Row old = it.next();
+                Row row = players.createRow();
+                for (String field : legacy.getFields()) {
+                    if (players.getField(field) != null) {
+                        row.put(field, old.get(field));
+                    }
+                }
+                row.put("ladderId", DEFAULT_LADDER);
+                if (legacy.getField("rating") == null) {
+                    row.put("rating", Ratings.INITIAL);
+                }
+                batch.add(operations.createPutIfAbsent(row, ReturnRow.Choice.NONE, false));
+                copied++;
+
+                if (batch.size() == MIGRATION_BATCH) {
+                    executeMigration(batch);
+                }
+            }
+        } finally {
+            it.close();
+        }
+        executeMigration(batch);
+
+        Row ladderRow = ladders.createRow();
+        ladderRow.put("ladderId", DEFAULT_LADDER).put("playerCount", copied);
+        playersAPI.putIfAbsent(ladderRow, null, null);
+        kvstore.executeSync("DROP TABLE IF EXISTS players");
+        System.out.println("Copied " + copied + " player(s) from table players into ladder " + DEFAULT_LADDER);
+    }
+
+    private void executeMigration(List<TableOperation> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            playersAPI.execute(batch, null);
+        } catch (TableOpExecutionException e) {
+            // not thrown, no operation aborts the batch
+            throw new IllegalStateException(e);
+        }
+        batch.clear();
+    }
+
+    // fills the rank cache with one ordered pass over the ladder's rank range;
+    // other ladders fill theirs on demand through findEmail
+    private void loadRankCache(Ladder ladder) {
+        ladder.ranks.clear();
+        TableIterator<Row> it = playersAPI.tableIterator(rankKey(ladder), null, matchReads.iterate(Direction.FORWARD, 0));
+
+        try {
+            while (it.hasNext()) {
+                Row player = it.next();
+                ladder.ranks.put(player.get("rank").asInteger().get(), player.get("email").asString().get());
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    public void deleteTable() {
+        try {
+            kvstore.executeSync("DROP TABLE ladders.players.matches");
+            kvstore.executeSync("DROP TABLE ladders.players");
+            kvstore.executeSync("DROP TABLE ladders");
 
         } catch (Exception e) {
             System.out.println(e.getMessage());
@@ -156,71 +461,147 @@ public class PongService implements Service {
      */
     @Override
     public void update(Routing.Rules rules) {
-        rules.get("/", this::handleGetPlayers).post("/addPlayer", this::handleAddPlayer).get("/getPlayers", this::handleGetPlayers)
-                .post("/challengePlayer", this::handleChallengePlayer) 
-                .post("/deletePlayer", this::handleDeletePlayer).post("/concludeMatch", this::handleConcludeMatch)
-                .post("/login", this::handleLogin).post("/inMatch", this::handlePlayerInMatch);
+        // long-lived stream, not timed, and needs no store
+        rules.get("/events", scoped(this::handleEvents))
+                .get("/ladders/{ladderId}/events", scoped(this::handleEvents))
+                .any(this::requireStore)
+                .get("/", metrics.timed("getPlayers", scoped(this::handleGetPlayers)));
+
+        // every endpoint works on the default ladder, or on any other under /ladders/{ladderId}
+        for (String ladderPath : Arrays.asList("", "/ladders/{ladderId}")) {
+            rules.post(ladderPath + "/addPlayer", metrics.timed("addPlayer", scoped(this::handleAddPlayer)))
+                    .get(ladderPath + "/getPlayers", metrics.timed("getPlayers", scoped(this::handleGetPlayers)))
+                    .post(ladderPath + "/challengePlayer", metrics.timed("challengePlayer", scoped(this::handleChallengePlayer)))
+                    .post(ladderPath + "/deletePlayer", metrics.timed("deletePlayer", scoped(this::handleDeletePlayer)))
+                    .post(ladderPath + "/concludeMatch", metrics.timed("concludeMatch", scoped(this::handleConcludeMatch)))
+                    .post(ladderPath + "/login", metrics.timed("login", scoped(this::handleLogin)))
+                    .post(ladderPath + "/inMatch", metrics.timed("inMatch", scoped(this::handlePlayerInMatch)))
+                    .get(ladderPath + "/getPlayerStats", metrics.timed("getPlayerStats", scoped(this::handleGetPlayerStats)))
+                    .get(ladderPath + "/suggestOpponents", metrics.timed("suggestOpponents", scoped(this::handleSuggestOpponents)));
+        }
+    }
+
+    private interface LadderHandler {
+        void accept(Ladder ladder, ServerRequest request, ServerResponse response);
+    }
+
+    // resolves the {ladderId} path parameter, or the default ladder when the route has none
+    private Handler scoped(LadderHandler handler) {
+        return (request, response) -> {
+            String ladderId = request.path().param("ladderId");
+            if (ladderId == null) {
+                ladderId = DEFAULT_LADDER;
+            } else if (!Ladder.validId(ladderId)) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder()
+                        .add("error", "Ladder id must be 1-64 letters, digits, '-' or '_'").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return;
+            }
+            handler.accept(ladder(ladderId), request, response);
+        };
+    }
+
+    private Ladder ladder(String ladderId) {
+        synchronized (ladderState) {
+            return ladderState.computeIfAbsent(ladderId, Ladder::new);
+        }
+    }
+
+    // after a committed write; if the ladder's state was evicted and rebuilt
+    // while the write was in flight, the new copy may hold pre-write reads
+    private void invalidate(Ladder ladder) {
+        ladder.leaderboard.invalidate();
+
+        Ladder current;
+        synchronized (ladderState) {
+            current = ladderState.get(ladder.id);
+        }
+        if (current != null && current != ladder) {
+            current.leaderboard.invalidate();
+            current.ranks.clear();
+        }
+    }
+
+    private void requireStore(ServerRequest request, ServerResponse response) {
+        if (storeReady.isDone()) {
+            request.next();
+            return;
+        }
+        JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Ladder store starting, please retry").build();
+        response.headers().put(Http.Header.RETRY_AFTER, "1");
+        response.status(Http.Status.SERVICE_UNAVAILABLE_503).send(jsonErrorObject);
     }
 
 
     /* ----------------------       LOGIN            ------------------------------------        */
     /* ----------------------       LOGIN            ------------------------------------        */
     
-    private void handleLogin(ServerRequest request, ServerResponse response) {
-        request.content().as(JsonObject.class).thenAccept(jo -> handleLoginResponse(jo, response));
+    private void handleLogin(Ladder ladder, ServerRequest request, ServerResponse response) {
+        request.content().as(JsonObject.class).thenAccept(jo -> handleLoginResponse(ladder, jo, response));
     }
 
-    private void handleLoginResponse(JsonObject jo, ServerResponse response) {
+    private void handleLoginResponse(Ladder ladder, JsonObject jo, ServerResponse response) {
         if (!jo.containsKey("email") || !jo.containsKey("password")) {
             JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Please provide player email/password").build();
             response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
             return;
         }
         String email = jo.getString("email").toLowerCase();
-        int playerRank = containsPlayer(email);
-
-        // no player by that name
-        if (playerRank == -1) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player by that name").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
-        }
-
         String password = jo.getString("password").toString();
-        PrimaryKey key = players.createPrimaryKey();
-        key.put("email", email);
-        Row row = playersAPI.get(key, null);
 
-        if (!password.equals(row.get("password").asString().get())) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Incorrect Password").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
-        }
+        getPlayer(ladder, email, matchReads).thenCompose(row -> {
+            // no player by that name
+            if (row == null) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player by that name").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return done();
+            }
 
-        boolean inMatch = row.get("challenged").asBoolean().get() || row.get("challenger").asBoolean().get();
-        JsonObject loginSuccess = JSON.createObjectBuilder().add("success", "Player Logged In").add("inMatch", inMatch).build();
-        response.status(Http.Status.ACCEPTED_202).send(loginSuccess);
-        return;
+            String stored = row.get("password").asString().get();
+            return credentials.verifyAsync(email, password, stored).thenAccept(valid -> {
+                if (!valid) {
+                    JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Incorrect Password").build();
+                    response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                    return;
+                }
+                if (Credentials.needsRehash(stored)) {
+                    rehashPassword(row, password);
+                }
+
+                boolean inMatch = row.get("challenged").asBoolean().get() || row.get("challenger").asBoolean().get();
+                JsonObject loginSuccess = JSON.createObjectBuilder().add("success", "Player Logged In").add("inMatch", inMatch).build();
+                response.status(Http.Status.ACCEPTED_202).send(loginSuccess);
+            });
+        }).exceptionally(t -> sendStoreError(response, t));
+    }
 
+    // a player who signed up before hashing gets the hashed form on their
+    // first login; a failure or a lost race leaves the plaintext for the next
+    // login to replace. A plain put if the version still matches: nothing a
+    // client sees changes, so there is no event and no cache to invalidate
+    private void rehashPassword(Row player, String password) {
+        String email = player.get("email").asString().get();
+        credentials.hashAsync(password).thenCompose(hashed -> {
+            player.put("password", hashed);
+            return playersAPI.putIfVersionAsync(player, player.getVersion(), null, null);
+        }).exceptionally(t -> {
+            System.out.println("Could not rehash the password of " + email + ": " + t);
+            return null;
+        });
     }
 
     /* ---------------------- ADD PLAYER ------------------------------------ */
     /* ---------------------- ADD PLAYER ------------------------------------ */
 
-    private void handleAddPlayer(ServerRequest request, ServerResponse response) {
-        request.content().as(JsonObject.class).thenAccept(jo -> handleAddPlayerResponse(jo, response));
+    private void handleAddPlayer(Ladder ladder, ServerRequest request, ServerResponse response) {
+        request.content().as(JsonObject.class).thenAccept(jo -> handleAddPlayerResponse(ladder, jo, response));
     }
 
-    private void handleAddPlayerResponse(JsonObject jo, ServerResponse response) {
+    private void handleAddPlayerResponse(Ladder ladder, JsonObject jo, ServerResponse response) {
         if (!(jo.containsKey("player") && jo.containsKey("email") && jo.containsKey("password"))) {
             JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Please provide player/email/password").build();
             response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
             return;
-        } else if (containsPlayer(jo.getString("email").toLowerCase()) != -1) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder()
-                    .add("error", "Player Email Already Exists : " + jo.getString("email").toLowerCase()).build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
         }
         String name = jo.getString("player").toString();
         String email = jo.getString("email").toLowerCase();
@@ -233,36 +614,79 @@ public class PongService implements Service {
             return;
         }
 
-        
-        addPlayer(name, email, password);
-        displayTable(kvstore);
-        JsonObject jsonSuccessObject = JSON.createObjectBuilder().add("success", "Added player: " + name).build();
-        response.status(Http.Status.ACCEPTED_202).send(jsonSuccessObject);
+        credentials.hashAsync(password).thenCompose(hashed -> addPlayer(ladder, new Player(name, email, hashed), 0)).thenAccept(rank -> {
+            if (rank == -1) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder()
+                        .add("error", "Player Email Already Exists : " + email).build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return;
+            } else if (rank == 0) {
+                sendConflict(response);
+                return;
+            }
+
+            JsonObject jsonSuccessObject = JSON.createObjectBuilder().add("success", "Added player: " + name).build();
+            response.status(Http.Status.ACCEPTED_202).send(jsonSuccessObject);
+        }).exceptionally(t -> sendStoreError(response, t));
     }
 
-    private int containsPlayer(String emailIn) {
-        PrimaryKey key = players.createPrimaryKey();
-        key.put("email", emailIn);
+    // Claims rank playerCount + 1 and inserts the player in one batch, so
+    // signup costs the same two round trips however long the ladder is.
+    // completes with the new rank, -1 if the email is taken, 0 if every attempt lost the race
+    private CompletableFuture<Integer> addPlayer(Ladder ladder, Player newPlayer, int attempt) {
+        if (attempt == MAX_WRITE_ATTEMPTS) {
+            metrics.exhausted("signup");
+            return CompletableFuture.completedFuture(0);
+        }
 
-        try {
-            TableIterator<Row> it = playersAPI.tableIterator(key, null, null);
-            if (it.hasNext()) {
-                return it.next().get("rank").asInteger().get();
-            }
-            return -1;
+        return getLadderRow(ladder).thenCompose(ladderRow -> {
+            int playerCount = ladderRow.get("playerCount").asInteger().get();
+
+            ladderRow.put("playerCount", playerCount + 1);
+            newPlayer.rank = playerCount + 1;
+
+            List<TableOperation> ops = Arrays.asList(guardedPut(ladderRow),
+                    operations.createPutIfAbsent(newPlayer.toRow(ladder.id), ReturnRow.Choice.NONE, true));
+
+            return LadderMetrics.time(metrics.execute, () -> playersAPI.executeAsync(ops, null)).handle((results, t) -> {
+                if (t == null) {
+                    metrics.attempts("signup", attempt + 1);
+                    ladder.ranks.put(newPlayer.rank, newPlayer.email);
+                    invalidate(ladder);
+                    events.publish(ops);
+                    return CompletableFuture.completedFuture(newPlayer.rank);
+                }
+
+                TableOpExecutionException aborted = abortedBatch(t);
+                if (aborted != null && aborted.getFailedOperationIndex() == 1) {
+                    return CompletableFuture.completedFuture(-1);
+                } else if (aborted != null) {
+                    // another signup took the rank first, read the counter again
+                    metrics.conflict("signup");
+                    return addPlayer(ladder, newPlayer, attempt + 1);
+                }
+                throw new CompletionException(t);
+            }).thenCompose(rank -> rank);
+        });
+    }
 
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.exit(1);
-            return -1;
-        }
-      
+    // ladder metadata row, or a fresh one with no players if it was never written
+    private CompletableFuture<Row> getLadderRow(Ladder ladder) {
+        return getLadderRow(ladder, matchReads);
     }
 
-    private void addPlayer(String name, String email, String password) {
-        Player newPlayer = new Player(name, email, password);
-        playersAPI.put(newPlayer.toRow(), null, null);
-        return;
+    private CompletableFuture<Row> getLadderRow(Ladder ladder, ReadProfile reads) {
+        PrimaryKey key = ladders.createPrimaryKey();
+        key.put("ladderId", ladder.id);
+
+        return LadderMetrics.time(metrics.get, () -> playersAPI.getAsync(key, reads.readOptions)).thenApply(ladderRow -> {
+            if (ladderRow == null) {
+                ladderRow = ladders.createRow();
+                ladderRow.put("ladderId", ladder.id);
+                ladderRow.put("playerCount", 0);
+            }
+            return ladderRow;
+        });
     }
 
     // public void clearDatabase() {
@@ -271,79 +695,105 @@ public class PongService implements Service {
     /* ---------------------- GET PLAYER ------------------------------------ */
     /* ---------------------- GET PLAYER ------------------------------------ */
 
-    private void handleGetPlayers(ServerRequest request, ServerResponse response) {
-        PrimaryKey key = players.createPrimaryKey();
-        TableIterator<Row> rowIter = playersAPI.tableIterator(key, null, null);
+    private void handleGetPlayers(Ladder ladder, ServerRequest request, ServerResponse response) {
+        if (request.queryParams().first("fromRank").isPresent() || request.queryParams().first("email").isPresent()) {
+            handleGetPlayersPage(ladder, request, response);
+            return;
+        }
 
-        List<JsonObject> players = new ArrayList<JsonObject>();
+        Leaderboard.Snapshot snapshot = ladder.leaderboard.current();
 
-        // table sorted
-        while (rowIter.hasNext()) {
-            Row player = rowIter.next();
+        if (snapshot != null) {
+            sendLeaderboard(request, response, snapshot);
+            return;
+        }
 
-            String playerName = player.get("name").toString();
-            String playerEmail = player.get("email").toString();
-            int playerRank = player.get("rank").asInteger().get();
-            int wins = player.get("wins").asInteger().get();
-            int losses = player.get("losses").asInteger().get();
-            int winStreak = player.get("winStreak").asInteger().get();
-            double ratio = (losses == 0) ? wins : (double)wins / (double)losses;
-            boolean inMatch = player.get("challenged").asBoolean().get() || player.get("challenger").asBoolean().get();
+        long generation = ladder.leaderboard.generation();
 
-            players.add(Json.createObjectBuilder().add("name", playerName)
-                                                  .add("email", playerEmail).add("rank", playerRank)
-                                                  .add("inMatch", inMatch)
-                                                  .add("wins", wins).add("losses", losses)
-                                                  .add("winStreak", winStreak).add("ratio", ratio).build());
+        // rank index hands rows back sorted by integer rank; read strictly, since
+        // a stale body would be cached until the next ladder write. This reader
+        // gets the body as it is scanned, without an ETag; readers after it get
+        // the cached copy.
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        stream(response, rankKey(ladder), null, matchReads.iterate(Direction.FORWARD, LeaderboardStream.ROWS_PER_CHUNK), body)
+                .thenRun(() -> ladder.leaderboard.publish(body.toByteArray(), generation));
+    }
+
+    private void sendLeaderboard(ServerRequest request, ServerResponse response, Leaderboard.Snapshot snapshot) {
+        response.headers().put(Http.Header.ETAG, snapshot.etag);
+
+        if (snapshot.etag.equals(request.headers().first(Http.Header.IF_NONE_MATCH).orElse(null))) {
+            response.status(Http.Status.NOT_MODIFIED_304).send();
+            return;
         }
 
-        rowIter.close();
-        
-        Collections.sort(players, new Comparator<JsonObject>() {
-        
-        @Override
-        public int compare(JsonObject a, JsonObject b) {
-            String valA = new String();
-            String valB = new String();
-
-            try {
-                valA = (String) a.get("rank").toString();
-                valB = (String) b.get("rank").toString();
-            } 
-            catch (JsonException e) {
-                System.out.println(e.getMessage());
+        response.headers().contentType(MediaType.APPLICATION_JSON);
+        response.send(snapshot.body);
+    }
+
+    // ?fromRank=&limit= returns one page of the ladder,
+    // ?email=&window= returns the players within window ranks of that player
+    private void handleGetPlayersPage(Ladder ladder, ServerRequest request, ServerResponse response) {
+        int window, limit;
+
+        try {
+            window = Integer.parseInt(request.queryParams().first("window").orElse(String.valueOf(DEFAULT_WINDOW)));
+            limit = Integer.parseInt(request.queryParams().first("limit").orElse(String.valueOf(MAX_PAGE_SIZE)));
+            if (!request.queryParams().first("email").isPresent()) {
+                sendRequestedPage(ladder, response, Integer.parseInt(request.queryParams().first("fromRank").get()), limit);
+                return;
             }
+        } catch (NumberFormatException e) {
+            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "fromRank, limit and window must be integers").build();
+            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+            return;
+        }
 
-            return valA.compareTo(valB);
+        int around = Math.max(0, Math.min(window, MAX_PAGE_SIZE / 2));
+
+        getPlayer(ladder, request.queryParams().first("email").get().toLowerCase(), leaderboardReads).thenAccept(player -> {
+            if (player == null) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player with that email").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return;
             }
-            
-        });
 
-        JsonArrayBuilder builder = Json.createArrayBuilder();
+            int rank = player.get("rank").asInteger().get();
+            int fromRank = Math.max(1, rank - around);
+            sendPage(ladder, response, fromRank, rank + around - fromRank + 1);
+        }).exceptionally(t -> sendStoreError(response, t));
+    }
 
-        for (int i = 0; i < players.size(); i++) {
-            builder.add(players.get(i));
+    // a fromRank given by the client must be on the ladder; the first page of
+    // an empty ladder is still an empty list
+    private void sendRequestedPage(Ladder ladder, ServerResponse response, int fromRank, int limit) {
+        if (fromRank < 1 || limit < 1) {
+            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "fromRank and limit must be at least 1").build();
+            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+            return;
         }
-        
-        JsonArray playersSorted = builder.build();
 
-        JsonObject returnObject = JSON.createObjectBuilder().add("players", playersSorted).build();
-        response.send(returnObject);    
+        getLadderRow(ladder, leaderboardReads).thenAccept(ladderRow -> {
+            int playerCount = ladderRow.get("playerCount").asInteger().get();
+            if (fromRank > Math.max(playerCount, 1)) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder()
+                        .add("error", "fromRank must be at most the number of players, " + playerCount).build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return;
+            }
+            sendPage(ladder, response, fromRank, limit);
+        }).exceptionally(t -> sendStoreError(response, t));
     }
 
-    public int compare(JsonObject a, JsonObject b) {
-        String valA = new String();
-        String valB = new String();
+    private void sendPage(Ladder ladder, ServerResponse response, int fromRank, int limit) {
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
 
-        try {
-            valA = (String) a.get("rank").toString();
-            valB = (String) b.get("rank").toString();
-        } 
-        catch (JsonException e) {
-            System.out.println(e.getMessage());
-        }
+        // last rank of the page, kept from overflowing past Integer.MAX_VALUE
+        int toRank = fromRank + Math.min(pageSize - 1, Integer.MAX_VALUE - fromRank);
 
-        return valA.compareTo(valB);
+        // bounded range on the rank index, fetched in a single batch
+        FieldRange range = rankIndex.createFieldRange("rank").setStart(fromRank, true).setEnd(toRank, true);
+        stream(response, rankKey(ladder), new MultiRowOptions(range), leaderboardReads.iterate(Direction.FORWARD, pageSize), null);
     }
 
     // NOT USED OUTSIDE OF TESTING
@@ -364,81 +814,91 @@ public class PongService implements Service {
     //     return playerList;
     // }   
 
+    /* ---------------------- EVENTS ------------------------------------ */
+    /* ---------------------- EVENTS ------------------------------------ */
+
+    // server-sent event stream of ladder changes, replaces polling /getPlayers and /inMatch
+    private void handleEvents(Ladder ladder, ServerRequest request, ServerResponse response) {
+        response.headers().contentType(EVENT_STREAM);
+        response.headers().put(Http.Header.CACHE_CONTROL, "no-cache");
+        response.send(events.subscribe(ladder.id));
+    }
+
     /* ---------------------- CHALLENGE PLAYER -----------------------------------  */
     /* ---------------------- CHALLENGE PLAYER ------------------------------------ */
 
-    private void handleChallengePlayer(ServerRequest request, ServerResponse response) {
-        request.content().as(JsonObject.class).thenAccept(jo -> handleChallengePlayerResponse(jo, response));
+    private void handleChallengePlayer(Ladder ladder, ServerRequest request, ServerResponse response) {
+        request.content().as(JsonObject.class).thenAccept(jo -> handleChallengePlayerResponse(ladder, jo, response));
     }
 
     // Person must select own name if ready to challenge player above them
-    private void handleChallengePlayerResponse(JsonObject jo, ServerResponse response) {
+    private void handleChallengePlayerResponse(Ladder ladder, JsonObject jo, ServerResponse response) {
         if (!jo.containsKey("email")) {
             JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Please provide challenger name and email").build();
             response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
             return;
-        } else if (containsPlayer(jo.getString("email").toLowerCase()) == -1) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player by that name").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
         }
 
         String challengerEmail = jo.getString("email").toLowerCase();
-        int rankChallenger = containsPlayer(challengerEmail);
-
-       
-        // check if player in battle already
-        // if not, set challenged = true
-        if (inBattle(rankChallenger)) {
-            // player already in Battle, cannot challenge
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "You are already in match").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
-        }
-
-         // top player can't challenge anyone above
-        if (rankChallenger == 1) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Top Player Cannot Challenge Anyone").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
-        }
-
-        // check player above
-        if (inBattle(rankChallenger - 1)) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Player above you already in match. Please wait until concluded").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
-        }
-
-        // find row with challenger rank
-        PrimaryKey challenger = players.createPrimaryKey();
-        challenger.put("email", findEmail(rankChallenger));
-        Row challengerPlayer = playersAPI.get(challenger, null);
 
-        // update row then table
-        challengerPlayer.put("challenger", true).put("challenged", false);
-        playersAPI.put(challengerPlayer, null, null);
-
-        // find row tie challenged rank
-        PrimaryKey challenged = players.createPrimaryKey();
-        challenged.put("email", findEmail(rankChallenger - 1));
-        Row challengedPlayer = playersAPI.get(challenged, null);
+        withRetry("challenge", response, () -> challenge(ladder, challengerEmail, response)).exceptionally(t -> sendStoreError(response, t));
+    }
 
-        // update row then table
-        challengedPlayer.put("challenged", true).put("challenger", false);
-        playersAPI.put(challengedPlayer, null, null);
+    // completes with true once a response is sent, false if the ladder changed under it
+    private CompletableFuture<Boolean> challenge(Ladder ladder, String challengerEmail, ServerResponse response) {
+        return getPlayer(ladder, challengerEmail, matchReads).thenCompose(challengerPlayer -> {
+            if (challengerPlayer == null) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player by that name").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return answered();
+            }
 
+            int rankChallenger = challengerPlayer.get("rank").asInteger().get();
+       
+            // check if player in battle already
+            // if not, set challenged = true
+            if (inBattle(challengerPlayer)) {
+                // player already in Battle, cannot challenge
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "You are already in match").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return answered();
+            }
 
-        JsonObject jsonSuccessObject = JSON.createObjectBuilder().add("success", "Challenge Initiated").build();
-        response.status(Http.Status.ACCEPTED_202).send(jsonSuccessObject);
+            // top player can't challenge anyone above
+            if (rankChallenger == 1) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Top Player Cannot Challenge Anyone").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return answered();
+            }
 
+            // check player above
+            return getPlayerAtRank(ladder, rankChallenger - 1).thenCompose(challengedPlayer -> {
+                if (challengedPlayer == null) {
+                    return lostRace();
+                } else if (inBattle(challengedPlayer)) {
+                    JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Player above you already in match. Please wait until concluded").build();
+                    response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                    return answered();
+                }
+
+                // update both rows in one batch, guarded by the versions just read
+                challengerPlayer.put("challenger", true).put("challenged", false);
+                challengedPlayer.put("challenged", true).put("challenger", false);
+
+                return executeLadderBatch(ladder, guardedPut(challengerPlayer), guardedPut(challengedPlayer)).thenApply(applied -> {
+                    if (!applied) {
+                        return false;
+                    }
+
+                    JsonObject jsonSuccessObject = JSON.createObjectBuilder().add("success", "Challenge Initiated").build();
+                    response.status(Http.Status.ACCEPTED_202).send(jsonSuccessObject);
+                    return true;
+                });
+            });
+        });
     }
 
-    private Boolean inBattle(int playerRank) {  
-        PrimaryKey key = players.createPrimaryKey();
-        key.put("email", findEmail(playerRank));
-        Row player = playersAPI.get(key, null);
-
+    private Boolean inBattle(Row player) {  
         if (player.get("challenger").asBoolean().get() || player.get("challenged").asBoolean().get())
             return true;
         return false;
@@ -447,260 +907,711 @@ public class PongService implements Service {
     /* -------------------------- CONCLUDE MATCH  -------------------------------------  */
     /* -------------------------- CONCLUDE MATCH  -------------------------------------  */
 
-    private void handleConcludeMatch(ServerRequest request, ServerResponse response) {
-        request.content().as(JsonObject.class).thenAccept(jo -> handleConcludeMatchResponse(jo, response));
+    private void handleConcludeMatch(Ladder ladder, ServerRequest request, ServerResponse response) {
+        request.content().as(JsonObject.class).thenAccept(jo -> handleConcludeMatchResponse(ladder, jo, response));
     }
 
     // Winning person must select
-    private void handleConcludeMatchResponse(JsonObject jo, ServerResponse response) {
+    private void handleConcludeMatchResponse(Ladder ladder, JsonObject jo, ServerResponse response) {
         if (!jo.containsKey("email")) {
             JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Please provide player email").build();
             response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
             return;
-        } else if (containsPlayer(jo.getString("email").toLowerCase()) == -1) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player by that name").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
         }
 
         String winnerEmail = jo.getString("email").toLowerCase();
 
-        PrimaryKey key = players.createPrimaryKey();
-        key.put("email", winnerEmail);
-        TableIterator<Row> it = playersAPI.tableIterator(key, null, null);
-        Row winningPlayer = it.next();
+        withRetry("conclude", response, () -> conclude(ladder, winnerEmail, response)).exceptionally(t -> sendStoreError(response, t));
+    }
 
+    // completes with true once a response is sent, false if the ladder changed under it
+    private CompletableFuture<Boolean> conclude(Ladder ladder, String winnerEmail, ServerResponse response) {
+        return getPlayer(ladder, winnerEmail, matchReads).thenCompose(winningPlayer -> {
+            if (winningPlayer == null) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player by that name").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return answered();
+            }
+
+            // if bottom won call swap player else just finish match without swap
+            if (!winningPlayer.get("challenger").asBoolean().get() && !winningPlayer.get("challenged").asBoolean().get()) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Player not in match").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return answered();
+            } else if (winningPlayer.get("challenger").asBoolean().get()) {
+                return swapPlayer(ladder, winningPlayer, response);
+            }
 
-        // if bottom won call swap player else just finish match without swap
-        if (!winningPlayer.get("challenger").asBoolean().get() && !winningPlayer.get("challenged").asBoolean().get()) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Player not in match").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
-        } else if (winningPlayer.get("challenger").asBoolean().get()) {
-            handleSwapPlayerResponse(jo, response);
-        } else {
             int winningRank = winningPlayer.get("rank").asInteger().get();        
             int losingRank = winningRank + 1;
 
-            // Update Winner
-            int wins = winningPlayer.get("wins").asInteger().get();
-            int winStreak = winningPlayer.get("winStreak").asInteger().get();
+            return getPlayerAtRank(ladder, losingRank).thenCompose(losingPlayer -> {
+                if (losingPlayer == null) {
+                    return lostRace();
+                }
 
-            // update row then table
-            winningPlayer.put("challenger", false).put("challenged", false).put("wins", wins + 1).put("winStreak", winStreak + 1);
-            playersAPI.put(winningPlayer, null, null);
+                // Update Winner
+                int wins = winningPlayer.get("wins").asInteger().get();
+                int winStreak = winningPlayer.get("winStreak").asInteger().get();
 
-            // Update Loser
-            PrimaryKey losingP = players.createPrimaryKey();
-            losingP.put("email", findEmail(losingRank));
-            Row losingPlayer = playersAPI.get(losingP, null);
+                winningPlayer.put("challenger", false).put("challenged", false).put("wins", wins + 1).put("winStreak", winStreak + 1);
 
-            int losses = losingPlayer.get("losses").asInteger().get();
+                // Update Loser
+                int losses = losingPlayer.get("losses").asInteger().get();
 
-            losingPlayer.put("challenger", false).put("challenged", false).put("winStreak", 0).put("losses", losses + 1);
-            playersAPI.put(losingPlayer, null, null);
+                losingPlayer.put("challenger", false).put("challenged", false).put("winStreak", 0).put("losses", losses + 1);
 
-        }
+                updateRatings(winningPlayer, losingPlayer);
+                long playedAt = System.currentTimeMillis();
+
+                return executeLadderBatch(ladder, guardedPut(winningPlayer), guardedPut(losingPlayer),
+                        matchRecord(winningPlayer, losingPlayer, true, winningRank, playedAt),
+                        matchRecord(losingPlayer, winningPlayer, false, losingRank, playedAt)).thenApply(applied -> {
+                    if (!applied) {
+                        return false;
+                    }
 
-        JsonObject jsonSuccessObject = JSON.createObjectBuilder().add("success", "Match Concluded").build();
-        response.status(Http.Status.ACCEPTED_202).send(jsonSuccessObject);
-        return;
+                    JsonObject jsonSuccessObject = JSON.createObjectBuilder().add("success", "Match Concluded").build();
+                    response.status(Http.Status.ACCEPTED_202).send(jsonSuccessObject);
+                    return true;
+                });
+            });
+        });
     }
 
-    /* -------------------------- SWAP PLAYER ------------------------------------ */
-    /* -------------------------- SWAP PLAYER ------------------------------------ */
+    // new Elo ratings go out in the same batch as the result, so they never disagree
+    private static void updateRatings(Row winningPlayer, Row losingPlayer) {
+        int[] ratings = Ratings.update(winningPlayer.get("rating").asInteger().get(), losingPlayer.get("rating").asInteger().get());
+        winningPlayer.put("rating", ratings[0]);
+        losingPlayer.put("rating", ratings[1]);
+    }
 
-    // Requires: at least two players exist,
-    private void handleSwapPlayerResponse(JsonObject jo, ServerResponse response) {
+    // history row for one side of a match, written in the batch that concludes it;
+    // player already holds its rank after the match
+    private TableOperation matchRecord(Row player, Row opponent, boolean won, int rankBefore, long playedAt) {
+        Row match = matches.createRow();
+        match.put("ladderId", player.get("ladderId").asString().get());
+        match.put("email", player.get("email").asString().get());
+        match.put("playedAt", playedAt);
+        match.put("opponent", opponent.get("email").asString().get());
+        match.put("won", won);
+        match.put("rankBefore", rankBefore);
+        match.put("rankAfter", player.get("rank").asInteger().get());
+
+        return operations.createPut(match, ReturnRow.Choice.NONE, true);
+    }
 
-        int playerRank = containsPlayer(jo.getString("email").toLowerCase());
-    
-        if (playerRank == -1) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder()
-                    .add("error", "No player named " + jo.getString("player")).build();
+    /* -------------------------- PLAYER STATS ------------------------------------ */
+    /* -------------------------- PLAYER STATS ------------------------------------ */
+
+    // record recomputed from the player's match history, read in one multiGet
+    private void handleGetPlayerStats(Ladder ladder, ServerRequest request, ServerResponse response) {
+        if (!request.queryParams().first("email").isPresent()) {
+            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Please provide player email").build();
             response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
             return;
         }
 
-        swapPlayer(playerRank, response);
+        String email = request.queryParams().first("email").get().toLowerCase();
+
+        // the history sits under the player's row, so one shard answers it in key (playedAt) order;
+        // the player is read alongside it, since an unknown email has no history either
+        CompletableFuture<Row> playerRead = getPlayer(ladder, email, leaderboardReads);
+        CompletableFuture<List<Row>> historyRead = LadderMetrics.time(metrics.get,
+                () -> playersAPI.multiGetAsync(matchesKey(ladder, email), null, leaderboardReads.readOptions));
 
-        JsonObject jsonSuccessObject = JSON.createObjectBuilder()
-                  .add("success", "Players swapped ranks").build();
-        response.status(Http.Status.ACCEPTED_202).send(jsonSuccessObject);
-        return;
+        playerRead.thenAcceptBoth(historyRead, (player, history) -> {
+            if (player == null) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player with that email").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return;
+            }
 
+            MatchStats stats = new MatchStats();
+            JsonArrayBuilder recent = JSON.createArrayBuilder();
+
+            for (int i = 0; i < history.size(); i++) {
+                Row match = history.get(i);
+                stats.add(match.get("won").asBoolean().get());
+
+                if (i >= history.size() - RECENT_MATCHES) {
+                    recent.add(JSON.createObjectBuilder()
+                            .add("opponent", match.get("opponent").asString().get())
+                            .add("won", match.get("won").asBoolean().get())
+                            .add("playedAt", match.get("playedAt").asLong().get())
+                            .add("rankBefore", match.get("rankBefore").asInteger().get())
+                            .add("rankAfter", match.get("rankAfter").asInteger().get()));
+                }
+            }
+
+            JsonObject jsonStats = JSON.createObjectBuilder()
+                    .add("email", email)
+                    .add("matches", stats.matches)
+                    .add("wins", stats.wins)
+                    .add("losses", stats.losses)
+                    .add("ratio", stats.ratio())
+                    .add("winStreak", stats.winStreak)
+                    .add("longestWinStreak", stats.longestWinStreak)
+                    .add("recent", recent)
+                    .build();
+            response.status(Http.Status.OK_200).send(jsonStats);
+        }).exceptionally(t -> sendStoreError(response, t));
     }
 
+    /* -------------------------- SUGGEST OPPONENTS ------------------------------------ */
+    /* -------------------------- SUGGEST OPPONENTS ------------------------------------ */
+
+    // free players with the nearest ratings, from two bounded scans of the rating index
+    private void handleSuggestOpponents(Ladder ladder, ServerRequest request, ServerResponse response) {
+        int limit;
+        try {
+            limit = Math.min(Integer.parseInt(request.queryParams().first("limit").orElse(String.valueOf(DEFAULT_SUGGESTIONS))), MAX_PAGE_SIZE);
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (!request.queryParams().first("email").isPresent() || limit < 1) {
+            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Please provide player email and a positive limit").build();
+            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+            return;
+        }
+
+        String email = request.queryParams().first("email").get().toLowerCase();
+        int wanted = limit;
+
+        getPlayer(ladder, email, leaderboardReads).thenCompose(player -> {
+            if (player == null) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No player by that name").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return done();
+            }
+
+            int rating = player.get("rating").asInteger().get();
+
+            // each scan reads on past the player and anyone in a match until it has wanted opponents
+            CompletableFuture<List<Row>> aboveRead = ratingScan(ladder, rating, Direction.FORWARD, email, wanted);
+            CompletableFuture<List<Row>> belowRead = ratingScan(ladder, rating, Direction.REVERSE, email, wanted);
+
+            return aboveRead.thenCombine(belowRead, (above, below) -> {
+                List<Row> suggested = Ratings.closest(rating, above, below, wanted, row -> row.get("rating").asInteger().get());
+
+                response.headers().contentType(MediaType.APPLICATION_JSON);
+                response.send(serialize(suggested));
+                return null;
+            });
+        }).exceptionally(t -> sendStoreError(response, t));
+    }
+
+    // up to limit free players other than email, rated at or above (FORWARD) or
+    // below (REVERSE) the rating, nearest first
+    private CompletableFuture<List<Row>> ratingScan(Ladder ladder, int rating, Direction direction, String email, int limit) {
+        FieldRange range = ratingIndex.createFieldRange("rating");
+        if (direction == Direction.FORWARD) {
+            range.setStart(rating, true);
+        } else {
+            range.setEnd(rating, false);
+        }
+        // one extra row per batch, the player themself may be among them
+        TableIteratorOptions nearest = leaderboardReads.iterate(direction, limit + 1);
+
+        return LadderMetrics.time(metrics.iterator, () -> RowCollector.collect(
+                playersAPI.tableIteratorAsync(ratingKey(ladder), new MultiRowOptions(range), nearest),
+                candidate -> !candidate.get("email").asString().get().equals(email) && !inBattle(candidate), limit));
+    }
+
+    // partial key matching every history row of one player
+    private PrimaryKey matchesKey(Ladder ladder, String email) {
+        PrimaryKey key = matches.createPrimaryKey();
+        key.put("ladderId", ladder.id);
+        key.put("email", email);
+        return key;
+    }
+
+    /* -------------------------- SWAP PLAYER ------------------------------------ */
+    /* -------------------------- SWAP PLAYER ------------------------------------ */
+
     // Requires: player provided is challenging player
     // only called if challenging player wins
-    // winningRank indicates rank of winning challenger, will be swapped
-    private void swapPlayer(int winningRank, ServerResponse response) {
-        // swap should only be called when challenging player wins
-        PrimaryKey winner = players.createPrimaryKey();
-        winner.put("email", findEmail(winningRank));
-        Row winningPlayer = playersAPI.get(winner, null);
+    // winningPlayer is the winning challenger, will be swapped with the player above
+    // completes with true once a response is sent, false if the ladder changed under it
+    private CompletableFuture<Boolean> swapPlayer(Ladder ladder, Row winningPlayer, ServerResponse response) {
+        int winningRank = winningPlayer.get("rank").asInteger().get();
 
+        // swap should only be called when challenging player wins
         if (!winningPlayer.get("challenger").asBoolean().get() || winningPlayer.get("challenged").asBoolean().get() || winningRank == 1) {
             JsonObject jsonErrorObject = JSON.createObjectBuilder().add("ERROR", "Swap player called incorrectly").build();
             response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
+            return answered();
         } 
 
-        // Update Winner
-        int wins = winningPlayer.get("wins").asInteger().get();
-        int winStreak = winningPlayer.get("winStreak").asInteger().get();
-
-        // update player
-        winningPlayer.put("challenger", false).put("challenged", false).put("wins", wins + 1).put("winStreak", winStreak + 1).put("rank", winningRank - 1);
-        
-
-        // Update Loser
-        PrimaryKey losingP = players.createPrimaryKey();
-        losingP.put("email", findEmail(winningRank - 1));
-        Row losingPlayer = playersAPI.get(losingP, null);
+        return getPlayerAtRank(ladder, winningRank - 1).thenCompose(losingPlayer -> {
+            if (losingPlayer == null) {
+                return lostRace();
+            }
 
-        int losses = losingPlayer.get("losses").asInteger().get();
+            // Update Winner
+            int wins = winningPlayer.get("wins").asInteger().get();
+            int winStreak = winningPlayer.get("winStreak").asInteger().get();
 
-        losingPlayer.put("challenger", false).put("challenged", false).put("winStreak", 0).put("losses", losses + 1).put("rank", winningRank);
-       
-        // Update Table
-        playersAPI.put(losingPlayer, null, null);
-        playersAPI.put(winningPlayer, null, null);
+            winningPlayer.put("challenger", false).put("challenged", false).put("wins", wins + 1).put("winStreak", winStreak + 1).put("rank", winningRank - 1);
+        
+            // Update Loser
+            int losses = losingPlayer.get("losses").asInteger().get();
 
+            losingPlayer.put("challenger", false).put("challenged", false).put("winStreak", 0).put("losses", losses + 1).put("rank", winningRank);
+
+            updateRatings(winningPlayer, losingPlayer);
+            long playedAt = System.currentTimeMillis();
+
+            // Update Table
+            return executeLadderBatch(ladder, guardedPut(losingPlayer), guardedPut(winningPlayer),
+                    matchRecord(winningPlayer, losingPlayer, true, winningRank, playedAt),
+                    matchRecord(losingPlayer, winningPlayer, false, winningRank - 1, playedAt)).thenApply(applied -> {
+                if (!applied) {
+                    return false;
+                }
+                ladder.ranks.swap(winningRank, winningRank - 1);
+
+                JsonObject jsonSuccessObject = JSON.createObjectBuilder()
+                          .add("success", "Players swapped ranks").build();
+                response.status(Http.Status.ACCEPTED_202).send(jsonSuccessObject);
+                return true;
+            });
+        });
     }
 
     /* -------------------------- DELETE PLAYER ------------------------------------ */
     /* -------------------------- DELETE PLAYER ------------------------------------ */
 
-    private void handleDeletePlayer(ServerRequest request, ServerResponse response) {
-        request.content().as(JsonObject.class).thenAccept(jo -> handleDeletePlayerResponse(jo, response));
+    private void handleDeletePlayer(Ladder ladder, ServerRequest request, ServerResponse response) {
+        request.content().as(JsonObject.class).thenAccept(jo -> handleDeletePlayerResponse(ladder, jo, response));
     }
 
-    private void handleDeletePlayerResponse(JsonObject jo, ServerResponse response) {
+    private void handleDeletePlayerResponse(Ladder ladder, JsonObject jo, ServerResponse response) {
         if (!jo.containsKey("email")) {
             JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Provide player email").build();
             response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
             return;
-        } else if (containsPlayer(jo.getString("email").toLowerCase()) == -1) {
-            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No such player exists").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
-            return;
         }
 
         String email = jo.getString("email").toLowerCase();
-        deletePlayer(email);
-        JsonObject jsonSuccess = JSON.createObjectBuilder().add("SUCCESS", "Deleted Player with email: " + email).build();
-        response.status(Http.Status.ACCEPTED_202).send(jsonSuccess);
 
+        withRetry("delete", response, () -> getPlayer(ladder, email, matchReads).thenCompose(player -> {
+            if (player == null) {
+                JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "No such player exists").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(jsonErrorObject);
+                return answered();
+            }
+
+            return deletePlayer(ladder, player).thenApply(deleted -> {
+                if (!deleted) {
+                    return false;
+                }
+                JsonObject jsonSuccess = JSON.createObjectBuilder().add("SUCCESS", "Deleted Player with email: " + email).build();
+                response.status(Http.Status.ACCEPTED_202).send(jsonSuccess);
+                return true;
+            });
+        })).exceptionally(t -> sendStoreError(response, t));
     }
 
-    private void deletePlayer(String emailIn) {
-        PrimaryKey key = players.createPrimaryKey();
-        key.put("email", emailIn);
-        TableIterator<Row> it = playersAPI.tableIterator(key, null, null);
+    // Completes with false if the player or their opponent changed before the
+    // delete applied, or if an earlier delete's shift had to be finished first.
+    //
+    // The store has no multi-row UPDATE, so every player below moves up one
+    // rank with a guarded put. Up to SHIFT_CHUNK of them go in the delete's own
+    // batch, so a delete near the bottom stays one atomic round trip. Below a
+    // longer tail the batch also records the vacant rank as the ladder's
+    // shiftGap, and closeGap moves the rest up SHIFT_CHUNK at a time after the
+    // delete has answered. Until then that one rank reads as empty: the
+    // leaderboard skips it, a challenge across it finds nobody above, and
+    // playerCount still counts the deleted player, so a signup takes a rank
+    // below the whole tail and is shifted with it. No batch grows with the
+    // ladder, and one that loses a race re-reads from the recorded gap.
+    private CompletableFuture<Boolean> deletePlayer(Ladder ladder, Row player) {
+        int rankToDelete = player.get("rank").asInteger().get();
 
-        Row player = it.next();
+        // the rows below, the opponent above and the counter are independent reads
+        CompletableFuture<List<Row>> belowRead = getPlayersBelow(ladder, rankToDelete, SHIFT_CHUNK + 1);
+        CompletableFuture<Row> aboveRead = player.get("challenger").asBoolean().get()
+                ? getPlayerAtRank(ladder, rankToDelete - 1)
+                : CompletableFuture.<Row>completedFuture(null);
+        CompletableFuture<Row> ladderRead = getLadderRow(ladder);
+
+        return CompletableFuture.allOf(belowRead, aboveRead, ladderRead).thenCompose(ignored -> {
+            Row ladderRow = ladderRead.join();
+            if (shiftGap(ladderRow) != 0) {
+                // ranks below the gap are still moving; the retry reads them settled
+                return closeGap(ladder).thenApply(closed -> false);
+            }
 
-        if (player.get("challenged").asBoolean().get()) {
-            // player below no longer in match
-            PrimaryKey below = players.createPrimaryKey();
-            below.put("email", findEmail(player.get("rank").asInteger().get() + 1));
-            Row belowPlayer = playersAPI.get(below, null);
+            List<Row> below = belowRead.join();
+            boolean chunked = below.size() > SHIFT_CHUNK;
+            if (chunked) {
+                below = below.subList(0, SHIFT_CHUNK);
+            }
 
-            belowPlayer.put("challenger", false).put("challenged", false);
-            playersAPI.put(belowPlayer, null, null);
+            List<TableOperation> ops = new ArrayList<TableOperation>();
+            for (Row belowPlayer : below) {
+                int rank = belowPlayer.get("rank").asInteger().get();
 
-        } else if (player.get("challenger").asBoolean().get()) {
-             // player above no longer in match
-             PrimaryKey above = players.createPrimaryKey();
-             above.put("email", findEmail(player.get("rank").asInteger().get() - 1));
-             Row abovePlayer = playersAPI.get(above, null);
- 
-             abovePlayer.put("challenger", false).put("challenged", false);
-             playersAPI.put(abovePlayer, null, null);
+                // player below no longer in match
+                if (rank == rankToDelete + 1 && player.get("challenged").asBoolean().get()) {
+                    belowPlayer.put("challenger", false).put("challenged", false);
+                }
+                belowPlayer.put("rank", rank - 1);
+                ops.add(guardedPut(belowPlayer));
+            }
+
+            // player above no longer in match
+            Row abovePlayer = aboveRead.join();
+            if (abovePlayer != null) {
+                abovePlayer.put("challenger", false).put("challenged", false);
+                ops.add(guardedPut(abovePlayer));
+            }
+
+            if (chunked) {
+                ladderRow.put("shiftGap", rankToDelete + SHIFT_CHUNK);
+            } else {
+                ladderRow.put("playerCount", ladderRow.get("playerCount").asInteger().get() - 1);
+            }
+            ops.add(guardedPut(ladderRow));
+            ops.add(operations.createDeleteIfVersion(player.createPrimaryKey(), player.getVersion(), ReturnRow.Choice.NONE, true));
+
+            List<Row> shifted = below;
+            return executeLadderBatch(ladder, ops).thenApply(applied -> {
+                if (applied) {
+                    if (chunked) {
+                        cacheShift(ladder, rankToDelete, shifted, false);
+                        closeGap(ladder).exceptionally(t -> {
+                            System.out.println("Could not close the rank gap of ladder " + ladder.id + ": " + t);
+                            return null;
+                        });
+                    } else {
+                        ladder.ranks.remove(rankToDelete);
+                    }
+
+                    // history is keyed under the deleted row; drop it so a new
+                    // signup with the same email starts clean
+                    String email = player.get("email").asString().get();
+                    playersAPI.multiDeleteAsync(matchesKey(ladder, email), null, null).exceptionally(t -> {
+                        System.out.println("Could not clear match history of " + email + ": " + t);
+                        return 0;
+                    });
+                }
+                return applied;
+            });
+        });
+    }
+
+    // the ladder's shift in progress, or a new one if shiftGap is set; one per
+    // ladder per process, a second process racing it only loses batches
+    private CompletableFuture<Void> closeGap(Ladder ladder) {
+        synchronized (ladder) {
+            if (ladder.closingGap == null || ladder.closingGap.isDone()) {
+                ladder.closingGap = shiftBelowGap(ladder);
+            }
+            return ladder.closingGap;
         }
-        
-        int rankToDelete = player.get("rank").asInteger().get();
-        key.put("email", findEmail(rankToDelete));
-        playersAPI.delete(key, null, null);
-        updateRanks(rankToDelete);
-        
-        return;
     }
 
-    // updates all ranks after the one deleted to be one less than previous
-    private void updateRanks(int rankDeleted) {
-        PrimaryKey key = players.createPrimaryKey();
-        TableIterator<Row> it = playersAPI.tableIterator(key, null, null);
-        
-        while (it.hasNext()) {
-            Row player = it.next();
-            int rank = player.get("rank").asInteger().get();
+    // moves the next SHIFT_CHUNK players below the gap up one rank, until the
+    // gap reaches the bottom and the deleted player leaves playerCount
+    private CompletableFuture<Void> shiftBelowGap(Ladder ladder) {
+        return shiftBelowGap(ladder, 1);
+    }
+
+    // attempt counts the races lost in a row; after MAX_WRITE_ATTEMPTS of them
+    // the gap stays recorded for the next delete, or the pass at startup, to close
+    private CompletableFuture<Void> shiftBelowGap(Ladder ladder, int attempt) {
+        return getLadderRow(ladder).thenCompose(ladderRow -> {
+            int gap = shiftGap(ladderRow);
+            if (gap == 0) {
+                return done();
+            }
+
+            return getPlayersBelow(ladder, gap, SHIFT_CHUNK).thenCompose(below -> {
+                List<TableOperation> ops = new ArrayList<TableOperation>();
+                for (Row belowPlayer : below) {
+                    belowPlayer.put("rank", belowPlayer.get("rank").asInteger().get() - 1);
+                    ops.add(guardedPut(belowPlayer));
+                }
+
+                boolean last = below.size() < SHIFT_CHUNK;
+                if (last) {
+                    ladderRow.putNull("shiftGap");
+                    ladderRow.put("playerCount", ladderRow.get("playerCount").asInteger().get() - 1);
+                } else {
+                    ladderRow.put("shiftGap", gap + SHIFT_CHUNK);
+                }
+                ops.add(guardedPut(ladderRow));
+
+                // a lost race leaves the gap where it was; the next pass re-reads it
+                return executeLadderBatch(ladder, ops).thenCompose(applied -> {
+                    if (applied) {
+                        metrics.attempts("shift", attempt);
+                        cacheShift(ladder, gap, below, last);
+                        return shiftBelowGap(ladder, 1);
+                    }
+
+                    metrics.conflict("shift");
+                    if (attempt == MAX_WRITE_ATTEMPTS) {
+                        metrics.exhausted("shift");
+                        return done();
+                    }
+                    return shiftBelowGap(ladder, attempt + 1);
+                });
+            });
+        });
+    }
+
+    // slots of the players just moved up into gap and the ranks after it; the
+    // slot the last of them left is the new gap, or past the bottom of the
+    // ladder once the shift is done
+    private void cacheShift(Ladder ladder, int gap, List<Row> shifted, boolean last) {
+        for (Row player : shifted) {
+            ladder.ranks.put(player.get("rank").asInteger().get(), player.get("email").asString().get());
+        }
+        int vacated = gap + shifted.size();
+        if (last) {
+            ladder.ranks.remove(vacated);
+        } else {
+            ladder.ranks.put(vacated, null);
+        }
+    }
+
+    // vacant rank of a chunked delete still being closed up, 0 if none
+    private static int shiftGap(Row ladderRow) {
+        FieldValue gap = ladderRow.get("shiftGap");
+        return (gap == null || gap.isNull()) ? 0 : gap.asInteger().get();
+    }
 
-            if (rank > rankDeleted) {
-                player.put("rank", rank - 1);
-                playersAPI.put(player, null, null);
+    // up to limit players ranked after rank, nearest first, read with a range scan on the rank index
+    private CompletableFuture<List<Row>> getPlayersBelow(Ladder ladder, int rank, int limit) {
+        FieldRange range = rankIndex.createFieldRange("rank").setStart(rank, false);
+        return LadderMetrics.time(metrics.iterator, () -> RowCollector.collect(playersAPI.tableIteratorAsync(
+                rankKey(ladder), new MultiRowOptions(range), matchReads.iterate(Direction.FORWARD, limit)), limit));
+    }
+
+    /* -------------------------- LADDER BATCHES ------------------------------------ */
+    /* -------------------------- LADDER BATCHES ------------------------------------ */
+
+    // every row of a ladder shares the ladderId shard key, so a batch is one
+    // round trip and commits atomically on that shard
+    private CompletableFuture<Boolean> executeLadderBatch(Ladder ladder, TableOperation... ops) {
+        return executeLadderBatch(ladder, Arrays.asList(ops));
+    }
+
+    // completes with false if any guarded row changed since it was read
+    private CompletableFuture<Boolean> executeLadderBatch(Ladder ladder, List<TableOperation> ops) {
+        return LadderMetrics.time(metrics.execute, () -> playersAPI.executeAsync(ops, null)).handle((results, t) -> {
+            if (t == null) {
+                invalidate(ladder);
+                events.publish(ops);
+                return true;
+            }
+
+            TableOpExecutionException aborted = abortedBatch(t);
+            if (aborted == null) {
+                throw new CompletionException(t);
             }
+            System.out.println("Ladder batch aborted at operation " + aborted.getFailedOperationIndex());
+            return false;
+        });
+    }
+
+    // the version check that failed, or null if the batch failed for another reason
+    private static TableOpExecutionException abortedBatch(Throwable t) {
+        Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+        return (cause instanceof TableOpExecutionException) ? (TableOpExecutionException) cause : null;
+    }
+
+    // put that only applies if the row is still at the version it was read at;
+    // a row that was never read from the store must still be absent
+    private TableOperation guardedPut(Row row) {
+        if (row.getVersion() == null) {
+            return operations.createPutIfAbsent(row, ReturnRow.Choice.NONE, true);
+        }
+        return operations.createPutIfVersion(row, row.getVersion(), ReturnRow.Choice.NONE, true);
+    }
+
+    // Runs a read-modify-write until it answers the request. An attempt that
+    // completes false lost a race (a guarded row moved before its batch
+    // applied) and is rerun from fresh reads; after MAX_WRITE_ATTEMPTS the
+    // client gets a 409.
+    private CompletableFuture<Void> withRetry(String operation, ServerResponse response, Supplier<CompletableFuture<Boolean>> attempt) {
+        return withRetry(operation, response, attempt, 1);
+    }
+
+    private CompletableFuture<Void> withRetry(String operation, ServerResponse response,
+                                              Supplier<CompletableFuture<Boolean>> attempt, int attempts) {
+        return attempt.get().thenCompose(answered -> {
+            if (answered) {
+                metrics.attempts(operation, attempts);
+                return done();
+            }
+
+            metrics.conflict(operation);
+            if (attempts == MAX_WRITE_ATTEMPTS) {
+                metrics.exhausted(operation);
+                sendConflict(response);
+                return done();
+            }
+            return withRetry(operation, response, attempt, attempts + 1);
+        });
+    }
+
+    private static CompletableFuture<Boolean> answered() {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    private static CompletableFuture<Boolean> lostRace() {
+        return CompletableFuture.completedFuture(false);
+    }
+
+    private void sendConflict(ServerResponse response) {
+        JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Ladder changed while updating, please retry").build();
+        response.status(Http.Status.CONFLICT_409).send(jsonErrorObject);
+    }
+
+    // terminal handler for a failed store call; the request still gets an answer
+    private Void sendStoreError(ServerResponse response, Throwable t) {
+        Throwable cause = (t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t;
+        if (cause instanceof RejectedExecutionException) {
+            // the password hashing queue is full
+            JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Too many password checks at once, please retry").build();
+            response.status(Http.Status.SERVICE_UNAVAILABLE_503).send(jsonErrorObject);
+            return null;
         }
+        System.out.println("Store request failed: " + t);
+        JsonObject jsonErrorObject = JSON.createObjectBuilder().add("error", "Ladder store unavailable, please retry").build();
+        response.status(Http.Status.INTERNAL_SERVER_ERROR_500).send(jsonErrorObject);
+        return null;
+    }
+
+    private static CompletableFuture<Void> done() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Row> getPlayer(Ladder ladder, String email, ReadProfile reads) {
+        return LadderMetrics.time(metrics.get, () -> playersAPI.getAsync(playerKey(ladder, email), reads.readOptions));
+    }
+
+    // index scan drained into a list, timed as one store call
+    private CompletableFuture<List<Row>> scan(IndexKey key, MultiRowOptions range, TableIteratorOptions options) {
+        return LadderMetrics.time(metrics.iterator, () -> RowCollector.collect(playersAPI.tableIteratorAsync(key, range, options)));
+    }
+
+    // sends a rank-ordered scan as it arrives; copy, if given, receives the body too
+    private CompletableFuture<Void> stream(ServerResponse response, IndexKey key, MultiRowOptions range,
+                                           TableIteratorOptions options, ByteArrayOutputStream copy) {
+        return LadderMetrics.time(metrics.iterator, () -> {
+            LeaderboardStream body = new LeaderboardStream(playersAPI.tableIteratorAsync(key, range, options), copy);
+            response.headers().contentType(MediaType.APPLICATION_JSON);
+            response.send(body);
+            return body.done();
+        });
+    }
+
+    private byte[] serialize(List<Row> playersByRank) {
+        Timer.Context context = metrics.json.time();
+        try {
+            return Leaderboard.serialize(playersByRank.iterator());
+        } finally {
+            context.stop();
+        }
+    }
+
+    // null if nobody holds the rank, or the cached holder has since moved or been deleted
+    private CompletableFuture<Row> getPlayerAtRank(Ladder ladder, int rank) {
+        return findEmail(ladder, rank).thenCompose(email -> {
+            if (email == null) {
+                return CompletableFuture.<Row>completedFuture(null);
+            }
+            return getPlayer(ladder, email, matchReads).thenApply(player -> {
+                if (player == null || player.get("rank").asInteger().get() != rank) {
+                    // a retry looks the rank up on the index again
+                    ladder.ranks.put(rank, null);
+                    return null;
+                }
+                return player;
+            });
+        });
+    }
+
+    private PrimaryKey playerKey(Ladder ladder, String email) {
+        PrimaryKey key = players.createPrimaryKey();
+        key.put("ladderId", ladder.id);
+        key.put("email", email);
+        return key;
+    }
+
+    // rank index scans stay within one ladder's ranks
+    private IndexKey rankKey(Ladder ladder) {
+        IndexKey key = rankIndex.createIndexKey();
+        key.put("ladderId", ladder.id);
+        return key;
+    }
+
+    private IndexKey ratingKey(Ladder ladder) {
+        IndexKey key = ratingIndex.createIndexKey();
+        key.put("ladderId", ladder.id);
+        return key;
     }
 
     /* -------------------------- inMatch ------------------------------------ */
     /* -------------------------- inMatch ------------------------------------ */
 
-    private void handlePlayerInMatch(ServerRequest request, ServerResponse response) {
-        request.content().as(JsonObject.class).thenAccept(jo -> handlePlayerInMatchResponse(jo, response));
+    private void handlePlayerInMatch(Ladder ladder, ServerRequest request, ServerResponse response) {
+        request.content().as(JsonObject.class).thenAccept(jo -> handlePlayerInMatchResponse(ladder, jo, response));
     }
 
-    private void handlePlayerInMatchResponse(JsonObject jo, ServerResponse response) {
+    private void handlePlayerInMatchResponse(Ladder ladder, JsonObject jo, ServerResponse response) {
         if (!jo.containsKey("email")) {
             JsonObject error = Json.createObjectBuilder().add("error", "Please provide player email").build();
             response.status(Http.Status.BAD_REQUEST_400).send(error);
             return;
         }
         
-        PrimaryKey key = players.createPrimaryKey();
-        key.put("email", jo.getString("email"));
-        Row player = playersAPI.get(key, null);
+        getPlayer(ladder, jo.getString("email"), leaderboardReads).thenCompose(player -> {
+            if (player == null) {
+                JsonObject error = Json.createObjectBuilder().add("error", "No player with that email").build();
+                response.status(Http.Status.BAD_REQUEST_400).send(error);
+                return done();
+            }
 
-        if (!player.isNull()) {
-            boolean inMatch = false; 
-            String playerName = "NULL";
-            String playerEmail = "NULL";
+            int rank = player.get("rank").asInteger().get();
+            CompletableFuture<Row> opponentRead;
 
             if (player.get("challenger").asBoolean().get()) {
-                PrimaryKey challengedKey = players.createPrimaryKey();
-                challengedKey.put("email", findEmail(player.get("rank").asInteger().get() - 1));
-                Row challengedPlayer = playersAPI.get(challengedKey, null);
-
-                playerName = challengedPlayer.get("name").asString().get();
-                playerEmail = challengedPlayer.get("email").asString().get();
-                inMatch = true;
+                opponentRead = getPlayerAtRank(ladder, rank - 1);
             } else if (player.get("challenged").asBoolean().get()) {
-                PrimaryKey challengerKey = players.createPrimaryKey();
-                challengerKey.put("email", findEmail(player.get("rank").asInteger().get() + 1));
-                Row challengerPlayer = playersAPI.get(challengerKey, null);
-
-                playerName = challengerPlayer.get("name").asString().get();
-                playerEmail = challengerPlayer.get("email").asString().get();
-                inMatch = true;
+                opponentRead = getPlayerAtRank(ladder, rank + 1);
+            } else {
+                opponentRead = CompletableFuture.completedFuture(null);
             }
 
-            JsonObject returnBool = Json.createObjectBuilder().add("inMatch", inMatch).add("player", playerName).add("email", playerEmail).build();
-            response.status(Http.Status.ACCEPTED_202).send(returnBool);
-            return;
-
-        } else {
-            JsonObject error = Json.createObjectBuilder().add("error", "No player with that email").build();
-            response.status(Http.Status.BAD_REQUEST_400).send(error);
-            return;
-        }
+            return opponentRead.thenAccept(opponent -> {
+                boolean inMatch = false; 
+                String playerName = "NULL";
+                String playerEmail = "NULL";
+
+                if (opponent != null) {
+                    playerName = opponent.get("name").asString().get();
+                    playerEmail = opponent.get("email").asString().get();
+                    inMatch = true;
+                }
+
+                JsonObject returnBool = Json.createObjectBuilder().add("inMatch", inMatch).add("player", playerName).add("email", playerEmail).build();
+                response.status(Http.Status.ACCEPTED_202).send(returnBool);
+            });
+        }).exceptionally(t -> sendStoreError(response, t));
     }
 
     private void displayTable(KVStore kvstore) {
         TableAPI tableH = kvstore.getTableAPI();
-        Table myTable = tableH.getTable("players");
+        Table myTable = tableH.getTable("ladders.players");
 
         PrimaryKey pkey = myTable.createPrimaryKey();
+        pkey.put("ladderId", DEFAULT_LADDER);
         TableIterator<Row> iter = tableH.tableIterator(pkey, null,
                 null);
         try {
@@ -718,9 +1629,10 @@ public class PongService implements Service {
 
     private void deleteAllRows(KVStore kvstore) {
         TableAPI tableH = kvstore.getTableAPI();
-        Table myTable = tableH.getTable("players");
+        Table myTable = tableH.getTable("ladders.players");
 
         PrimaryKey pkey = myTable.createPrimaryKey();
+        pkey.put("ladderId", DEFAULT_LADDER);
         TableIterator<Row> iter = tableH.tableIterator(pkey, null,
                 null);
         try {
@@ -728,6 +1640,7 @@ public class PongService implements Service {
                 Row row = iter.next();
                 String email = row.get("email").asString().get();
                 PrimaryKey key = myTable.createPrimaryKey();
+                key.put("ladderId", DEFAULT_LADDER);
                 key.put("email", email);
                 tableH.delete(key, null, null);
             }
@@ -738,16 +1651,23 @@ public class PongService implements Service {
     }
 
 
-    private String findEmail(int rank) {
-        PrimaryKey key = players.createPrimaryKey();
-        TableIterator<Row> it = playersAPI.tableIterator(key, null, null);
+    // rank cache first, rank index on a miss; never scans the table
+    // completes with null if no player holds that rank
+    private CompletableFuture<String> findEmail(Ladder ladder, int rank) {
+        String email = ladder.ranks.get(rank);
+        if (email != null) return CompletableFuture.completedFuture(email);
 
-        while (it.hasNext()) {
-            Row player = it.next();
-            if (player.get("rank").asInteger().get() == rank) return player.get("email").asString().get();
-        }
+        IndexKey key = rankKey(ladder);
+        key.put("rank", rank);
 
-        return "NULL EMAIL FROM FIND EMAIL";
+        return scan(key, null, matchReads.iterate(Direction.UNORDERED, 0)).thenApply(rows -> {
+            if (rows.isEmpty()) {
+                return null;
+            }
+            String found = rows.get(0).get("email").asString().get();
+            ladder.ranks.put(rank, found);
+            return found;
+        });
     }
 }
 
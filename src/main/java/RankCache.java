@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process, write-through copy of the ladder order.
+ *
+ * Slot {@code rank - 1} holds the email of the player currently at that rank,
+ * so rank lookups never have to touch the store. PongService updates the cache
+ * right after every successful write that moves a rank; a miss (null slot) is
+ * resolved through the rank index and written back.
+ */
+class RankCache {
+    private final List<String> emails = new ArrayList<String>();
+
+    // email at rank, or null if rank is not cached
+    synchronized String get(int rank) {
+        if (rank < 1 || rank > emails.size()) {
+            return null;
+        }
+        return emails.get(rank - 1);
+    }
+
+    synchronized void put(int rank, String email) {
+        while (emails.size() < rank) {
+            emails.add(null);
+        }
+        emails.set(rank - 1, email);
+    }
+
+    synchronized void swap(int rankA, int rankB) {
+        String emailA = get(rankA);
+        String emailB = get(rankB);
+        put(rankA, emailB);
+        put(rankB, emailA);
+    }
+
+    // removes rank and moves every player below it up one slot
+    synchronized void remove(int rank) {
+        if (rank >= 1 && rank <= emails.size()) {
+            emails.remove(rank - 1);
+        }
+    }
+
+    synchronized void clear() {
+        emails.clear();
+    }
+
+    synchronized int size() {
+        return emails.size();
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Elo ratings kept alongside the rank ladder.
+ *
+ * Ranks only move between neighbours; ratings move by how surprising the
+ * result was, so they say more about skill and are what opponents are
+ * suggested by.
+ */
+class Ratings {
+    static final int INITIAL = 1500;
+
+    // largest change a single match can make
+    static final int K_FACTOR = 32;
+
+    // chance the first player beats the second
+    static double expected(int rating, int opponentRating) {
+        return 1.0 / (1.0 + Math.pow(10.0, (opponentRating - rating) / 400.0));
+    }
+
+    // {winner's new rating, loser's new rating}; points won equal points lost
+    static int[] update(int winnerRating, int loserRating) {
+        int change = (int) Math.round(K_FACTOR * (1.0 - expected(winnerRating, loserRating)));
+        return new int[] { winnerRating + change, loserRating - change };
+    }
+
+    // Merges candidates rated at or above the rating (nearest first) with
+    // those below it (nearest first) into the limit closest overall.
+    static <T> List<T> closest(int rating, List<T> above, List<T> below, int limit, ToIntFunction<T> ratingOf) {
+        List<T> closest = new ArrayList<T>(limit);
+        int a = 0, b = 0;
+
+        while (closest.size() < limit && (a < above.size() || b < below.size())) {
+            if (b == below.size() || (a < above.size()
+                    && ratingOf.applyAsInt(above.get(a)) - rating <= rating - ratingOf.applyAsInt(below.get(b)))) {
+                closest.add(above.get(a++));
+            } else {
+                closest.add(below.get(b++));
+            }
+        }
+        return closest;
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.concurrent.TimeUnit;
+
+import io.helidon.config.Config;
+
+import oracle.kv.Consistency;
+import oracle.kv.Direction;
+import oracle.kv.table.ReadOptions;
+import oracle.kv.table.TableIteratorOptions;
+
+/**
+ * Consistency and timeout for one class of store reads, read from a
+ * "ladder.reads.*" section of application.yaml:
+ *
+ * <pre>
+ *   consistency: absolute | none-required | time
+ *   permissible-lag: 1000   # ms a replica may trail the master, for time
+ *   timeout: 2000           # ms, 0 for the store default
+ * </pre>
+ */
+class ReadProfile {
+    private static final long DEFAULT_LAG_MILLIS = 1000;
+
+    final Consistency consistency;
+    final long timeoutMillis;
+    final ReadOptions readOptions;
+
+    ReadProfile(Consistency consistency, long timeoutMillis) {
+        this.consistency = consistency;
+        this.timeoutMillis = timeoutMillis;
+        this.readOptions = new ReadOptions(consistency, timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // settings missing from the section fall back to defaults
+    static ReadProfile from(Config section, ReadProfile defaults) {
+        long timeout = section.get("timeout").asLong().orElse(defaults.timeoutMillis);
+        String consistency = section.get("consistency").asString().orElse(null);
+
+        if (consistency == null) {
+            return new ReadProfile(defaults.consistency, timeout);
+        }
+
+        switch (consistency) {
+        case "absolute":
+            return new ReadProfile(Consistency.ABSOLUTE, timeout);
+        case "none-required":
+            return new ReadProfile(Consistency.NONE_REQUIRED, timeout);
+        case "time":
+            long lag = section.get("permissible-lag").asLong().orElse(DEFAULT_LAG_MILLIS);
+            return new ReadProfile(new Consistency.Time(lag, TimeUnit.MILLISECONDS, timeout, TimeUnit.MILLISECONDS), timeout);
+        default:
+            throw new IllegalArgumentException("Unknown read consistency '" + consistency + "' in " + section.key());
+        }
+    }
+
+    // index scan options; batchSize 0 uses the store default
+    TableIteratorOptions iterate(Direction direction, int batchSize) {
+        return new TableIteratorOptions(direction, consistency, timeoutMillis, TimeUnit.MILLISECONDS, 0, batchSize);
+    }
+}
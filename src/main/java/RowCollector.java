@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import oracle.kv.table.Row;
+
+/**
+ * Drains a {@code TableAPI.tableIteratorAsync} publisher into a list.
+ *
+ * Only used for bounded scans (a rank lookup, the players below a deleted
+ * rank, rating neighbours), so buffering every row is fine; leaderboard
+ * bodies are streamed by LeaderboardStream instead. An open-ended range can be
+ * cut off after a number of rows instead, counting only the rows that pass a
+ * filter; one more row is requested for each row the filter drops.
+ */
+class RowCollector implements Subscriber<Row> {
+    private final List<Row> rows = new ArrayList<Row>();
+    private final CompletableFuture<List<Row>> result = new CompletableFuture<List<Row>>();
+    private final Predicate<Row> filter;
+    private final long limit;
+    private Subscription subscription;
+
+    private RowCollector(Predicate<Row> filter, long limit) {
+        this.filter = filter;
+        this.limit = limit;
+    }
+
+    static CompletableFuture<List<Row>> collect(Publisher<Row> publisher) {
+        return collect(publisher, Long.MAX_VALUE);
+    }
+
+    // the first limit rows, the scan is cancelled after that
+    static CompletableFuture<List<Row>> collect(Publisher<Row> publisher, long limit) {
+        return collect(publisher, row -> true, limit);
+    }
+
+    // the first limit rows that pass the filter, the scan is cancelled after that
+    static CompletableFuture<List<Row>> collect(Publisher<Row> publisher, Predicate<Row> filter, long limit) {
+        RowCollector collector = new RowCollector(filter, limit);
+        publisher.subscribe(collector);
+        return collector.result;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(limit);
+    }
+
+    @Override
+    public void onNext(Row row) {
+        if (!filter.test(row)) {
+            // an unbounded request already covers the replacement
+            if (limit != Long.MAX_VALUE) {
+                subscription.request(1);
+            }
+            return;
+        }
+        rows.add(row);
+        if (rows.size() == limit) {
+            subscription.cancel();
+            result.complete(rows);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        result.completeExceptionally(t);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(rows);
+    }
+}
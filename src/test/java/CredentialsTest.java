@@ -0,0 +1,52 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+public class CredentialsTest {
+
+    @Test
+    public void testHashAndVerify() {
+        String stored = Credentials.hash("secret");
+        assertNotEquals("secret", stored);
+        assertNotEquals(stored, Credentials.hash("secret"));
+
+        Credentials credentials = new Credentials(2, 60000);
+        assertTrue(credentials.verify("bob@oracle.com", "secret", stored));
+        // second login is answered from the cache
+        assertTrue(credentials.verify("bob@oracle.com", "secret", stored));
+        assertFalse(credentials.verify("bob@oracle.com", "wrong", stored));
+
+        // plaintext rows from before hashing still log in
+        assertTrue(credentials.verify("tom@oracle.com", "old", "old"));
+        assertFalse(credentials.verify("joe@oracle.com", "new", "old"));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        Credentials credentials = new Credentials(2, 60000);
+        String stored = credentials.hashAsync("secret").get();
+        assertFalse(Credentials.needsRehash(stored));
+
+        assertTrue(credentials.verifyAsync("bob@oracle.com", "secret", stored).get());
+        // answered from the cache without waiting on the pool
+        assertTrue(credentials.verifyAsync("bob@oracle.com", "secret", stored).isDone());
+        assertFalse(credentials.verifyAsync("bob@oracle.com", "wrong", stored).get());
+
+        assertTrue(Credentials.needsRehash("old"));
+        assertTrue(credentials.verifyAsync("tom@oracle.com", "old", "old").get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        Credentials credentials = new Credentials(2, 60000);
+        credentials.verify("bob@oracle.com", "a", "a");
+        credentials.verify("tom@oracle.com", "b", "b");
+        credentials.verify("joe@oracle.com", "c", "c");
+
+        assertEquals(2, credentials.size());
+    }
+}
@@ -0,0 +1,43 @@
+import oracle.kv.impl.api.table.TableBuilder;
+import oracle.kv.table.Table;
+
+/**
+ * The ladders.players table without a store, for building rows in tests and
+ * benchmarks, from the columns LadderSchema writes its DDL with. Column types
+ * only; defaults and NOT NULL are left to the store.
+ */
+final class InMemorySchema {
+
+    private InMemorySchema() {
+    }
+
+    static Table playersTable() {
+        TableBuilder ladders = TableBuilder.createTableBuilder("ladders");
+        addColumns(ladders, LadderSchema.ladderColumns());
+        ladders.primaryKey("ladderId").shardKey("ladderId");
+
+        TableBuilder players = TableBuilder.createTableBuilder("players", null, ladders.buildTable());
+        addColumns(players, LadderSchema.playerColumns());
+        players.primaryKey("email");
+        return players.buildTable();
+    }
+
+    private static void addColumns(TableBuilder builder, String[][] columns) {
+        for (String[] column : columns) {
+            String type = column[1].split(" ")[0];
+            switch (type) {
+            case "STRING":
+                builder.addString(column[0]);
+                break;
+            case "INTEGER":
+                builder.addInteger(column[0]);
+                break;
+            case "BOOLEAN":
+                builder.addBoolean(column[0]);
+                break;
+            default:
+                throw new IllegalStateException("No in-memory column for type " + type);
+            }
+        }
+    }
+}
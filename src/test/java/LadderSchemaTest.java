@@ -0,0 +1,32 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import oracle.kv.table.Table;
+
+
+public class LadderSchemaTest {
+
+    @Test
+    public void testDdl() {
+        assertEquals("CREATE TABLE IF NOT EXISTS ladders (ladderId STRING,playerCount INTEGER,shiftGap INTEGER,"
+                + "PRIMARY KEY (ladderId))",
+                LadderSchema.laddersDdl());
+        assertEquals("CREATE TABLE IF NOT EXISTS ladders.players (email STRING,rank INTEGER,winStreak INTEGER,"
+                + "wins INTEGER,losses INTEGER,rating INTEGER DEFAULT 1500 NOT NULL,name STRING,password STRING,"
+                + "challenger BOOLEAN,challenged BOOLEAN,PRIMARY KEY (email))", LadderSchema.playersDdl());
+    }
+
+    @Test
+    public void testInMemoryTableMatchesDdl() {
+        Table players = InMemorySchema.playersTable();
+
+        assertEquals("ladders.players", players.getFullName());
+        assertEquals(Arrays.asList("ladderId", "email", "rank", "winStreak", "wins", "losses", "rating", "name",
+                "password", "challenger", "challenged"), players.getFields());
+        assertEquals(Arrays.asList("ladderId", "email"), players.getPrimaryKey());
+        assertEquals(Arrays.asList("ladderId"), players.getShardKey());
+    }
+}
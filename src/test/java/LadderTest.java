@@ -0,0 +1,20 @@
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+public class LadderTest {
+
+    @Test
+    public void testValidId() {
+        assertTrue(Ladder.validId("main"));
+        assertTrue(Ladder.validId("austin-office_2"));
+
+        assertFalse(Ladder.validId(null));
+        assertFalse(Ladder.validId(""));
+        assertFalse(Ladder.validId("two words"));
+        assertFalse(Ladder.validId("../main"));
+        assertFalse(Ladder.validId(new String(new char[65]).replace('\0', 'a')));
+    }
+}
@@ -0,0 +1,134 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.helidon.common.http.DataChunk;
+import io.helidon.common.reactive.Flow;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import oracle.kv.table.Row;
+import oracle.kv.table.Table;
+
+
+public class LeaderboardStreamTest {
+
+    // hands out rows only as they are requested, and remembers the most ever outstanding
+    private static class ListPublisher implements Publisher<Row> {
+        final List<Row> rows;
+        int next;
+        long outstanding;
+        long maxOutstanding;
+        boolean completed;
+
+        ListPublisher(List<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super Row> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    outstanding += n;
+                    maxOutstanding = Math.max(maxOutstanding, outstanding);
+                    while (outstanding > 0 && next < rows.size()) {
+                        outstanding--;
+                        subscriber.onNext(rows.get(next++));
+                    }
+                    if (next == rows.size() && !completed) {
+                        completed = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+    }
+
+    // asks for one chunk at a time, like a response writing to a slow client
+    private static class ChunkReader implements Flow.Subscriber<DataChunk> {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Flow.Subscription subscription;
+        int chunks;
+        boolean complete;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(DataChunk chunk) {
+            byte[] bytes = chunk.bytes();
+            body.write(bytes, 0, bytes.length);
+            chunks++;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    private static List<Row> players(int size) {
+        Table table = InMemorySchema.playersTable();
+
+        List<Row> rows = new ArrayList<Row>();
+        for (int rank = 1; rank <= size; rank++) {
+            Row row = table.createRow();
+            row.put("ladderId", "main").put("email", "player" + rank + "@oracle.com").put("rank", rank)
+               .put("name", "Player " + rank).put("password", "").put("challenged", false).put("challenger", false)
+               .put("winStreak", 0).put("wins", rank).put("losses", 1).put("rating", 1500);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Test
+    public void testStreamsSameBodyInChunks() {
+        List<Row> rows = players(150);
+        ListPublisher scan = new ListPublisher(rows);
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        LeaderboardStream stream = new LeaderboardStream(scan, copy);
+
+        ChunkReader reader = new ChunkReader();
+        stream.subscribe(reader);
+
+        byte[] expected = Leaderboard.serialize(rows.iterator());
+        assertTrue(reader.complete);
+        assertTrue(stream.done().isDone());
+        assertArrayEquals(expected, reader.body.toByteArray());
+        assertArrayEquals(expected, copy.toByteArray());
+
+        // 64 + 64 + 22 players, never more than one chunk's rows asked of the store
+        assertEquals(3, reader.chunks);
+        assertEquals(LeaderboardStream.ROWS_PER_CHUNK, scan.maxOutstanding);
+    }
+
+    @Test
+    public void testEmptyLadder() {
+        LeaderboardStream stream = new LeaderboardStream(new ListPublisher(new ArrayList<Row>()), null);
+        ChunkReader reader = new ChunkReader();
+        stream.subscribe(reader);
+
+        assertTrue(reader.complete);
+        assertEquals("{\"players\":[]}", new String(reader.body.toByteArray()));
+    }
+}
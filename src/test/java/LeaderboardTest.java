@@ -0,0 +1,38 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+
+public class LeaderboardTest {
+
+    @Test
+    public void testPublishAndInvalidate() {
+        Leaderboard leaderboard = new Leaderboard();
+        assertNull(leaderboard.current());
+
+        Leaderboard.Snapshot first = leaderboard.publish("{\"players\":[]}".getBytes(), leaderboard.generation());
+        assertSame(first, leaderboard.current());
+
+        leaderboard.invalidate();
+        assertNull(leaderboard.current());
+
+        Leaderboard.Snapshot second = leaderboard.publish("{\"players\":[{}]}".getBytes(), leaderboard.generation());
+        assertNotEquals(first.etag, second.etag);
+    }
+
+    @Test
+    public void testStaleBuildIsNotCached() {
+        Leaderboard leaderboard = new Leaderboard();
+        long generation = leaderboard.generation();
+
+        // ladder changes while the body is being built
+        leaderboard.invalidate();
+        Leaderboard.Snapshot stale = leaderboard.publish("{\"players\":[]}".getBytes(), generation);
+
+        assertNull(leaderboard.current());
+        assertEquals("{\"players\":[]}", new String(stale.body));
+    }
+}
@@ -39,6 +39,25 @@ public class MainTest {
                 Assertions.fail("Failed to start webserver");
             }
         }
+
+        // the ladder store opens in the background; until /health reports UP
+        // every ladder route answers 503
+        long storeTimeout = TimeUnit.MINUTES.toMillis(2);
+        now = System.currentTimeMillis();
+
+        while (healthStatus() != 200) {
+            Thread.sleep(250);
+            if ((System.currentTimeMillis() - now) > storeTimeout) {
+                Assertions.fail("Ladder store not ready, /health still DOWN");
+            }
+        }
+    }
+
+    private static int healthStatus() throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + webServer.port() + "/health").openConnection();
+        int status = conn.getResponseCode();
+        conn.disconnect();
+        return status;
     }
 
     @AfterAll
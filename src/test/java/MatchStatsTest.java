@@ -0,0 +1,31 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+
+public class MatchStatsTest {
+
+    @Test
+    public void testStreaks() {
+        MatchStats stats = new MatchStats();
+        for (boolean won : new boolean[] { true, true, true, false, true, true }) {
+            stats.add(won);
+        }
+
+        assertEquals(6, stats.matches);
+        assertEquals(5, stats.wins);
+        assertEquals(1, stats.losses);
+        assertEquals(2, stats.winStreak);
+        assertEquals(3, stats.longestWinStreak);
+        assertEquals(5.0, stats.ratio());
+    }
+
+    @Test
+    public void testNoMatches() {
+        MatchStats stats = new MatchStats();
+
+        assertEquals(0, stats.matches);
+        assertEquals(0, stats.winStreak);
+        assertEquals(0.0, stats.ratio());
+    }
+}
@@ -0,0 +1,41 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+
+public class RankCacheTest {
+
+    @Test
+    public void testPutAndGet() {
+        RankCache cache = new RankCache();
+        cache.put(1, "bob@oracle.com");
+        cache.put(3, "tom@oracle.com");
+
+        assertEquals("bob@oracle.com", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals("tom@oracle.com", cache.get(3));
+        assertNull(cache.get(4));
+        assertNull(cache.get(0));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testSwapAndRemove() {
+        RankCache cache = new RankCache();
+        cache.put(1, "bob@oracle.com");
+        cache.put(2, "steve@oracle.com");
+        cache.put(3, "joe@oracle.com");
+
+        // [bob, steve, joe] -> [steve, bob, joe]
+        cache.swap(2, 1);
+        assertEquals("steve@oracle.com", cache.get(1));
+        assertEquals("bob@oracle.com", cache.get(2));
+
+        // delete bob, joe moves up
+        cache.remove(2);
+        assertEquals("joe@oracle.com", cache.get(2));
+        assertNull(cache.get(3));
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,34 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+public class RatingsTest {
+
+    @Test
+    public void testUpdate() {
+        // even match moves half of K
+        int[] even = Ratings.update(1500, 1500);
+        assertEquals(1516, even[0]);
+        assertEquals(1484, even[1]);
+
+        // favourite gains little, upset gains a lot
+        int[] expected = Ratings.update(1800, 1400);
+        int[] upset = Ratings.update(1400, 1800);
+        assertEquals(1803, expected[0]);
+        assertEquals(1429, upset[0]);
+        assertEquals(1771, upset[1]);
+    }
+
+    @Test
+    public void testClosest() {
+        List<Integer> above = Arrays.asList(1510, 1550, 1700);
+        List<Integer> below = Arrays.asList(1495, 1420, 1300);
+
+        assertEquals(Arrays.asList(1495, 1510, 1550, 1420), Ratings.closest(1500, above, below, 4, r -> r));
+        assertEquals(Arrays.asList(1510, 1550, 1700), Ratings.closest(1500, above, Arrays.<Integer>asList(), 5, r -> r));
+    }
+}
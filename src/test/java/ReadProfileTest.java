@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+
+import oracle.kv.Consistency;
+
+import org.junit.jupiter.api.Test;
+
+
+public class ReadProfileTest {
+    private static final ReadProfile STRICT = new ReadProfile(Consistency.ABSOLUTE, 5000);
+
+    private static Config section(Map<String, String> settings) {
+        return Config.builder().sources(ConfigSources.create(settings)).build();
+    }
+
+    @Test
+    public void testDefaults() {
+        ReadProfile profile = ReadProfile.from(section(new HashMap<String, String>()), STRICT);
+
+        assertSame(Consistency.ABSOLUTE, profile.consistency);
+        assertEquals(5000, profile.readOptions.getTimeout());
+    }
+
+    @Test
+    public void testTimeConsistency() {
+        Map<String, String> settings = new HashMap<String, String>();
+        settings.put("consistency", "time");
+        settings.put("permissible-lag", "250");
+        settings.put("timeout", "800");
+
+        ReadProfile profile = ReadProfile.from(section(settings), STRICT);
+
+        assertTrue(profile.consistency instanceof Consistency.Time);
+        assertEquals(250, ((Consistency.Time) profile.consistency).getPermissibleLag(TimeUnit.MILLISECONDS));
+        assertEquals(800, profile.timeoutMillis);
+    }
+
+    @Test
+    public void testUnknownConsistency() {
+        Map<String, String> settings = new HashMap<String, String>();
+        settings.put("consistency", "eventual");
+
+        assertThrows(IllegalArgumentException.class, () -> ReadProfile.from(section(settings), STRICT));
+    }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import oracle.kv.table.Row;
+import oracle.kv.table.Table;
+
+
+public class RowCollectorTest {
+
+    // hands out rows only as they are requested, and counts what was handed out
+    private static class ListPublisher implements Publisher<Row> {
+        final List<Row> rows;
+        int next;
+        long outstanding;
+        boolean cancelled;
+
+        ListPublisher(List<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super Row> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    outstanding += n;
+                    while (outstanding > 0 && next < rows.size() && !cancelled) {
+                        outstanding--;
+                        subscriber.onNext(rows.get(next++));
+                    }
+                    if (next == rows.size() && !cancelled) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    // every third player is in a match
+    private static List<Row> players(int size) {
+        Table table = InMemorySchema.playersTable();
+
+        List<Row> rows = new ArrayList<Row>();
+        for (int rank = 1; rank <= size; rank++) {
+            Row row = table.createRow();
+            row.put("ladderId", "main").put("email", "player" + rank + "@oracle.com").put("rank", rank)
+               .put("name", "Player " + rank).put("password", "").put("challenged", rank % 3 == 0)
+               .put("challenger", false).put("winStreak", 0).put("wins", 0).put("losses", 0).put("rating", 1500);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static boolean free(Row row) {
+        return !row.get("challenged").asBoolean().get();
+    }
+
+    @Test
+    public void testFilteredRowsDoNotCount() throws Exception {
+        ListPublisher scan = new ListPublisher(players(30));
+
+        List<Row> rows = RowCollector.collect(scan, RowCollectorTest::free, 5).get();
+
+        assertEquals(5, rows.size());
+        for (Row row : rows) {
+            assertTrue(free(row));
+        }
+        // player3 and player6 were dropped and replaced, the scan stopped after player7
+        assertEquals("player7@oracle.com", rows.get(4).get("email").asString().get());
+        assertEquals(7, scan.next);
+        assertTrue(scan.cancelled);
+    }
+
+    @Test
+    public void testScanEndsBeforeLimit() throws Exception {
+        ListPublisher scan = new ListPublisher(players(6));
+
+        List<Row> rows = RowCollector.collect(scan, RowCollectorTest::free, 5).get();
+
+        assertEquals(4, rows.size());
+        assertEquals(6, scan.next);
+    }
+
+    @Test
+    public void testUnfilteredLimit() throws Exception {
+        ListPublisher scan = new ListPublisher(players(30));
+
+        List<Row> rows = RowCollector.collect(scan, 5).get();
+
+        assertEquals(5, rows.size());
+        assertEquals(5, scan.next);
+    }
+}
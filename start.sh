@@ -1,8 +1,5 @@
 java -jar kvstore.jar kvlite -secure-config disable &
 echo "Start"
-echo "Waiting for NoSQL to launch on 5000..."
-sleep 20s
-echo "Sleep Done!"
 
 
 # while ! nc -z $(hostname) 5000; do   
@@ -11,5 +8,6 @@ echo "Sleep Done!"
 # until nc -z 5000; do sleep 1s; done
 # until echo "Initializing: " | grep -m 1 "Created new kvlite store"; do : ; done
 
-echo "NoSQL launched"
+# The service connects to NoSQL in the background and retries until it is up;
+# /health answers 503 until the ladder tables are ready.
 java -jar target/ping-pong.jar
\ No newline at end of file